@@ -0,0 +1,110 @@
+package com.physics.particlesimulator;
+
+import java.util.SplittableRandom;
+
+// Particle layouts shared by the benchmarks. "uniform" spreads particles over the whole
+// world; "clustered" packs them into a few dense blobs, like a particle-life run after a
+// few thousand steps; "blob" puts half of the particles into a single wider blob, the worst
+// case for splitting a step across threads.
+final class BenchmarkWorlds {
+    static final int WIDTH = 10000;
+    static final int HEIGHT = 6000;
+    private static final int CLUSTERS = 12;
+    private static final double BLOB_SHARE = 0.5;
+
+    private BenchmarkWorlds() {
+    }
+
+    static ParticleStore spawn(int count, int types, String density, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        ParticleStore store = new ParticleStore(count);
+        switch (density) {
+            case "uniform" -> {
+                for (int i = 0; i < count; i++) {
+                    store.add(random.nextDouble(WIDTH), random.nextDouble(HEIGHT),
+                            random.nextDouble(-1, 1), random.nextDouble(-1, 1), random.nextInt(types));
+                }
+            }
+            case "clustered" -> {
+                double[] centerX = new double[CLUSTERS];
+                double[] centerY = new double[CLUSTERS];
+                for (int c = 0; c < CLUSTERS; c++) {
+                    centerX[c] = random.nextDouble(WIDTH);
+                    centerY[c] = random.nextDouble(HEIGHT);
+                }
+                double spread = Math.min(WIDTH, HEIGHT) / 40.0;
+                for (int i = 0; i < count; i++) {
+                    int c = random.nextInt(CLUSTERS);
+                    double x = centerX[c] + gaussian(random) * spread;
+                    double y = centerY[c] + gaussian(random) * spread;
+                    store.add(wrap(x, WIDTH), wrap(y, HEIGHT),
+                            random.nextDouble(-1, 1), random.nextDouble(-1, 1), random.nextInt(types));
+                }
+            }
+            case "blob" -> {
+                double centerX = random.nextDouble(WIDTH);
+                double centerY = random.nextDouble(HEIGHT);
+                double spread = Math.min(WIDTH, HEIGHT) / 10.0;
+                for (int i = 0; i < count; i++) {
+                    double x;
+                    double y;
+                    if (random.nextDouble() < BLOB_SHARE) {
+                        x = wrap(centerX + gaussian(random) * spread, WIDTH);
+                        y = wrap(centerY + gaussian(random) * spread, HEIGHT);
+                    } else {
+                        x = random.nextDouble(WIDTH);
+                        y = random.nextDouble(HEIGHT);
+                    }
+                    store.add(x, y, random.nextDouble(-1, 1), random.nextDouble(-1, 1), random.nextInt(types));
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown density " + density);
+        }
+        return store;
+    }
+
+    // The particles after steps steps under the given parameters, by when a uniform layout
+    // has clumped into the slow, dense clusters of a long run. store itself is not changed.
+    static ParticleStore settle(ParticleStore store, InteractionTable table, int steps) {
+        World world = new World(WIDTH, HEIGHT, table, copy(store), new SplittableRandom(0), 0);
+        world.getEngine().setSymmetric(true); // the fastest exact mode
+        world.step(steps);
+        return world.getParticles();
+    }
+
+    static ParticleStore copy(ParticleStore store) {
+        ParticleStore copy = new ParticleStore(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            copy.add(store.x[i], store.y[i], store.vx[i], store.vy[i], store.type[i]);
+        }
+        return copy;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller, one of the pair is enough here
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static double wrap(double value, double size) {
+        value %= size;
+        return value < 0 ? value + size : value;
+    }
+
+    static SpatialIndex index(PhysicsEngine engine, ParticleStore store, String cellSize) {
+        return index(engine, store, cellSize, WIDTH, HEIGHT);
+    }
+
+    static SpatialIndex index(PhysicsEngine engine, ParticleStore store, String cellSize, double width, double height) {
+        double size;
+        if (cellSize.equals("auto")) {
+            engine.setAutoCellSize(true);
+            size = engine.bestCellSize(width, height, store.size());
+        } else {
+            engine.setAutoCellSize(false);
+            size = Double.parseDouble(cellSize);
+        }
+        SpatialIndex index = new SpatialIndex(width, height, size);
+        index.build(store);
+        return index;
+    }
+}
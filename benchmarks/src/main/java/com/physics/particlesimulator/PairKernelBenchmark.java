@@ -0,0 +1,72 @@
+package com.physics.particlesimulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// The pair force kernel on its own, over a fixed batch of candidate neighbors in range,
+// reported per pair, reading parameters from the packed InteractionTable like the engine.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PairKernelBenchmark {
+    private static final int PAIRS = 4096;
+
+    @Param({"7", "32", "64"})
+    public int typeCount;
+
+    private final double[] dx = new double[PAIRS];
+    private final double[] dy = new double[PAIRS];
+    private final int[] typeA = new int[PAIRS];
+    private final int[] typeB = new int[PAIRS];
+    private InteractionTable table;
+
+    @Setup
+    public void setUp() {
+        table = InteractionTable.random(typeCount, new SplittableRandom(42));
+
+        SplittableRandom random = new SplittableRandom(42);
+        double cutoff = table.cutoff;
+        for (int i = 0; i < PAIRS; i++) {
+            double distance = random.nextDouble(1, cutoff);
+            double angle = random.nextDouble(2 * Math.PI);
+            dx[i] = distance * Math.cos(angle);
+            dy[i] = distance * Math.sin(angle);
+            typeA[i] = random.nextInt(typeCount);
+            typeB[i] = random.nextInt(typeCount);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double forces() {
+        double[] params = table.data;
+        double fx = 0;
+        double fy = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            int p = table.offset(typeA[i], typeB[i]);
+            double distance = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+            double scale = PhysicsEngine.forceScale(distance, params[p + InteractionTable.REPULSION],
+                    params[p + InteractionTable.INVERSE_MIN_DISTANCE], params[p + InteractionTable.ATTRACTION],
+                    params[p + InteractionTable.INVERSE_RADIUS]) / distance;
+            fx += dx[i] * scale;
+            fy += dy[i] * scale;
+        }
+        return fx + fy;
+    }
+}
@@ -0,0 +1,71 @@
+package com.physics.particlesimulator;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// The particle draw loop against an off-screen canvas. No JavaFX toolkit is started, so
+// this measures the cost of issuing draw commands on the FX thread, not rasterization.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+    private static final int SCREEN_WIDTH = 1920;
+    private static final int SCREEN_HEIGHT = 1080;
+
+    @Param({"18000", "100000"})
+    public int particleCount;
+
+    @Param({"7"})
+    public int typeCount;
+
+    @Param({"uniform", "clustered"})
+    public String density;
+
+    // "world" shows the whole world as the density heatmap, "close" a 1:1 view of its center
+    @Param({"world", "close"})
+    public String zoom;
+
+    private SpatialIndex index;
+    private ParticleRenderer renderer;
+    private Camera2D camera;
+    private GraphicsContext graphicsContext;
+
+    @Setup
+    public void setUp() {
+        PhysicsEngine engine = new PhysicsEngine(InteractionTable.random(typeCount, new SplittableRandom(42)));
+        ParticleStore store = BenchmarkWorlds.spawn(particleCount, typeCount, density, 42);
+        index = BenchmarkWorlds.index(engine, store, "auto");
+        renderer = new ParticleRenderer(typeCount);
+
+        double fit = Math.min((double) SCREEN_WIDTH / BenchmarkWorlds.WIDTH, (double) SCREEN_HEIGHT / BenchmarkWorlds.HEIGHT);
+        camera = new Camera2D(0, 0, zoom.equals("world") ? fit : 1.0);
+        camera.centerOnWorld(BenchmarkWorlds.WIDTH, BenchmarkWorlds.HEIGHT, SCREEN_WIDTH, SCREEN_HEIGHT);
+        graphicsContext = new Canvas(SCREEN_WIDTH, SCREEN_HEIGHT).getGraphicsContext2D();
+    }
+
+    @Benchmark
+    public void drawParticles() {
+        // A full-canvas opaque fill also discards the commands recorded by the last invocation
+        graphicsContext.setFill(Color.BLACK);
+        graphicsContext.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        renderer.draw(graphicsContext, camera, index);
+    }
+}
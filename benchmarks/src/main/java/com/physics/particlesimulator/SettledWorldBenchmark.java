@@ -0,0 +1,78 @@
+package com.physics.particlesimulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// One full step of a settled world: uniformly spawned particles pre-stepped settleSteps
+// times, once per trial, until they move slowly in dense clusters. That is the state
+// Verlet neighbor lists are for, so skin 0, which searches the stencil cells every step,
+// is compared with skin 20, which reuses the lists until a particle has moved 10 units.
+// Every iteration starts again from the settled particles.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SettledWorldBenchmark {
+    @Param({"18000"})
+    public int particleCount;
+
+    @Param({"7"})
+    public int typeCount;
+
+    @Param({"1000"})
+    public int settleSteps;
+
+    @Param({"0", "20"})
+    public double skin;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private PhysicsEngine engine;
+    private ParticleStore settled;
+    private ParticleStore store;
+    private SpatialIndex index;
+
+    @Setup(Level.Trial)
+    public void settle() {
+        InteractionTable table = InteractionTable.random(typeCount, new SplittableRandom(42));
+        settled = BenchmarkWorlds.settle(BenchmarkWorlds.spawn(particleCount, typeCount, "uniform", 42),
+                table, settleSteps);
+        engine = new PhysicsEngine(table);
+        engine.setThreads(threads);
+        engine.setNeighborSkin(skin);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpParticles() {
+        store = BenchmarkWorlds.copy(settled);
+        index = BenchmarkWorlds.index(engine, store, "auto");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.setThreads(1); // shuts down the engine's pool
+    }
+
+    @Benchmark
+    public long updateAll() {
+        engine.updateAll(store, index);
+        return engine.getPairCount();
+    }
+}
@@ -0,0 +1,53 @@
+package com.physics.particlesimulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cell migration: the counting-sort rebuild of the spatial index that ends every step.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+    @Param({"18000", "100000"})
+    public int particleCount;
+
+    @Param({"7"})
+    public int typeCount;
+
+    @Param({"125", "250"})
+    public String cellSize;
+
+    @Param({"uniform", "clustered"})
+    public String density;
+
+    private ParticleStore store;
+    private SpatialIndex index;
+
+    @Setup
+    public void setUp() {
+        PhysicsEngine engine = new PhysicsEngine(InteractionTable.random(typeCount, new SplittableRandom(42)));
+        store = BenchmarkWorlds.spawn(particleCount, typeCount, density, 42);
+        index = BenchmarkWorlds.index(engine, store, cellSize);
+    }
+
+    @Benchmark
+    public int build() {
+        index.build(store);
+        return index.cellStart[index.cellCount()];
+    }
+}
@@ -0,0 +1,104 @@
+package com.physics.particlesimulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// One full PhysicsEngine step: force computation, integration and index rebuild.
+// -p checkpoint=<file> measures a saved, settled world instead of freshly spawned
+// particles; the file then fixes the particle count, types and density.
+// -p precision=float measures the float kernel, vectorized in the forked JVM.
+// -p skin=20 measures Verlet neighbor lists, which pay off once particles have slowed
+// down: SettledWorldBenchmark compares skin 0 and 20 on a built-in settled world, or pass
+// a settled checkpoint here, e.g. one saved by HeadlessRunner --steps 1000 --save FILE.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class UpdateAllBenchmark {
+    @Param({"18000", "100000"})
+    public int particleCount;
+
+    @Param({"7", "32"})
+    public int typeCount;
+
+    @Param({"auto", "125", "250"})
+    public String cellSize;
+
+    @Param({"uniform", "clustered", "blob"})
+    public String density;
+
+    @Param({"false", "true"})
+    public boolean symmetric;
+
+    // Clustered layouts at more than one thread show how evenly a step is split
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({""})
+    public String checkpoint;
+
+    @Param({"double"})
+    public String precision;
+
+    @Param({"0"})
+    public double skin;
+
+    private PhysicsEngine engine;
+    private ParticleStore store;
+    private SpatialIndex index;
+
+    @Setup(Level.Trial)
+    public void setUpEngine() throws IOException {
+        if (checkpoint.isEmpty()) {
+            engine = new PhysicsEngine(InteractionTable.random(typeCount, new SplittableRandom(42)));
+        } else {
+            engine = new PhysicsEngine(Checkpoint.load(Path.of(checkpoint)).table());
+        }
+        engine.setThreads(threads);
+        engine.setSymmetric(symmetric);
+        engine.setFloatPrecision(precision.equals("float"));
+        engine.setNeighborSkin(skin);
+    }
+
+    // Fresh particles every iteration so the layout does not drift away from the parameter
+    @Setup(Level.Iteration)
+    public void setUpParticles() throws IOException {
+        if (checkpoint.isEmpty()) {
+            store = BenchmarkWorlds.spawn(particleCount, typeCount, density, 42);
+            index = BenchmarkWorlds.index(engine, store, cellSize);
+        } else {
+            Checkpoint saved = Checkpoint.load(Path.of(checkpoint));
+            store = saved.particles;
+            index = BenchmarkWorlds.index(engine, store, cellSize, saved.width, saved.height);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.setThreads(1); // shuts down the engine's pool
+    }
+
+    @Benchmark
+    public long updateAll() {
+        engine.updateAll(store, index);
+        return engine.getPairCount();
+    }
+}
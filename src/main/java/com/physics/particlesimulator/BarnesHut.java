@@ -0,0 +1,332 @@
+package com.physics.particlesimulator;
+
+import java.util.Arrays;
+
+// Quadtree force mode for interaction radii near world scale, where the cell stencil
+// covers most of the grid and a step becomes O(N^2). The tree is rebuilt from the sorted
+// index every step. A node far enough away, size / distance below the opening angle,
+// acts on a particle as one point per type at the centroid of that type's particles in
+// it: the force law differs per type pair, so one center of mass per node would mix
+// attraction and repulsion. Nodes whose box lies beyond the particle's largest cutoff are
+// skipped, and distances use the nearest periodic image, like the cell kernels.
+// Nodes never cross the world border, so centroids are plain averages; a node whose box
+// crosses the seam opposite the particle is always opened instead.
+class BarnesHut {
+    static final int LEAF_SIZE = 8;
+    private static final int MAX_DEPTH = 32; // stops splitting piles of coincident particles
+
+    private final double theta;
+
+    // Interaction parameters for this step
+    private InteractionTable table;
+    private int numTypes;
+    private double[] typeCutoffSquared = new double[0]; // largest cutoff of each type, squared
+
+    // Particles in tree order; node n holds start[n] .. end[n]
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private int[] type = new int[0];
+    private int[] order = new int[0];
+    private int[] scratch = new int[0];
+    // Partition of the node being split, done before its children are split in turn
+    private final int[] quadrantStart = new int[5];
+    private final int[] cursor = new int[4];
+
+    // Nodes: box, first of four consecutive children (-1 for a leaf), and per type the
+    // particle count and centroid at n * numTypes + t
+    private int nodes = 0;
+    private int[] start = new int[0];
+    private int[] end = new int[0];
+    private int[] child = new int[0];
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+    private double[] centerX = new double[0]; // centroid of all particles, for the opening test
+    private double[] centerY = new double[0];
+    private int[] typeCount = new int[0];
+    private double[] typeX = new double[0];
+    private double[] typeY = new double[0];
+
+    private double width;
+    private double height;
+    private int count; // particles in the last build
+
+    BarnesHut(double theta) {
+        this.theta = theta;
+    }
+
+    double theta() {
+        return theta;
+    }
+
+    void load(InteractionTable table) {
+        if (this.table == table) return;
+        this.table = table;
+        numTypes = table.numTypes;
+        typeCutoffSquared = new double[numTypes];
+        for (int a = 0; a < numTypes; a++) {
+            for (int b = 0; b < numTypes; b++) {
+                typeCutoffSquared[a] = Math.max(typeCutoffSquared[a],
+                        table.data[table.offset(a, b) + InteractionTable.CUTOFF_SQUARED]);
+            }
+        }
+        nodes = 0; // per-type arrays are sized by the type count
+        typeCount = new int[0];
+    }
+
+    // Grows the per-particle arrays to hold capacity particles, and the node arrays by as
+    // much as the particle count grows, so the next build is unlikely to grow them
+    void reserve(int capacity) {
+        if (order.length < capacity) {
+            x = new double[capacity];
+            y = new double[capacity];
+            type = new int[capacity];
+            order = new int[capacity];
+            scratch = new int[capacity];
+        }
+        if (count > 0) {
+            growNodes((int) Math.min(Integer.MAX_VALUE - 8, (long) nodes * capacity / count));
+        }
+    }
+
+    void build(SpatialIndex index) {
+        int count = index.size();
+        this.count = count;
+        width = index.width;
+        height = index.height;
+        if (order.length < count) {
+            reserve(index.x.length);
+        }
+        for (int i = 0; i < count; i++) order[i] = i;
+        nodes = 0;
+        int root = addNode(0, count, 0, 0, width, height);
+        split(index, root, 0);
+
+        // Copy positions into tree order so leaves are linear walks
+        for (int i = 0; i < count; i++) {
+            int k = order[i];
+            x[i] = index.x[k];
+            y[i] = index.y[k];
+            type[i] = index.type[k];
+        }
+        summarize();
+    }
+
+    private void split(SpatialIndex index, int node, int depth) {
+        int from = start[node];
+        int to = end[node];
+        if (to - from <= LEAF_SIZE || depth == MAX_DEPTH) return;
+        double midX = 0.5 * (minX[node] + maxX[node]);
+        double midY = 0.5 * (minY[node] + maxY[node]);
+
+        // Stable partition of order[from .. to] into the four quadrants
+        int[] quadrantStart = this.quadrantStart;
+        int[] cursor = this.cursor;
+        Arrays.fill(quadrantStart, 0);
+        for (int i = from; i < to; i++) {
+            quadrantStart[quadrant(index, order[i], midX, midY) + 1]++;
+        }
+        quadrantStart[0] = from;
+        for (int q = 0; q < 4; q++) quadrantStart[q + 1] += quadrantStart[q];
+        System.arraycopy(quadrantStart, 0, cursor, 0, 4);
+        for (int i = from; i < to; i++) {
+            int k = order[i];
+            scratch[cursor[quadrant(index, k, midX, midY)]++] = k;
+        }
+        System.arraycopy(scratch, from, order, from, to - from);
+
+        int first = nodes;
+        addNode(quadrantStart[0], quadrantStart[1], minX[node], minY[node], midX, midY);
+        addNode(quadrantStart[1], quadrantStart[2], midX, minY[node], maxX[node], midY);
+        addNode(quadrantStart[2], quadrantStart[3], minX[node], midY, midX, maxY[node]);
+        addNode(quadrantStart[3], quadrantStart[4], midX, midY, maxX[node], maxY[node]);
+        child[node] = first;
+        for (int c = first; c < first + 4; c++) {
+            split(index, c, depth + 1);
+        }
+    }
+
+    private static int quadrant(SpatialIndex index, int k, double midX, double midY) {
+        return (index.x[k] >= midX ? 1 : 0) + (index.y[k] >= midY ? 2 : 0);
+    }
+
+    private int addNode(int from, int to, double x0, double y0, double x1, double y1) {
+        if (nodes == start.length) {
+            growNodes(Math.max(64, nodes * 2));
+        }
+        int node = nodes++;
+        start[node] = from;
+        end[node] = to;
+        child[node] = -1;
+        minX[node] = x0;
+        minY[node] = y0;
+        maxX[node] = x1;
+        maxY[node] = y1;
+        return node;
+    }
+
+    // Room for capacity nodes, keeping the nodes added so far
+    private void growNodes(int capacity) {
+        if (start.length >= capacity) return;
+        start = Arrays.copyOf(start, capacity);
+        end = Arrays.copyOf(end, capacity);
+        child = Arrays.copyOf(child, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        // The per-type sums are filled in from scratch by every build
+        typeCount = new int[capacity * numTypes];
+        typeX = new double[capacity * numTypes];
+        typeY = new double[capacity * numTypes];
+    }
+
+    // Fills in the per-type counts and centroids, children before parents
+    private void summarize() {
+        if (typeCount.length < start.length * numTypes) {
+            typeCount = new int[start.length * numTypes];
+            typeX = new double[start.length * numTypes];
+            typeY = new double[start.length * numTypes];
+        }
+        for (int n = nodes - 1; n >= 0; n--) {
+            int base = n * numTypes;
+            Arrays.fill(typeCount, base, base + numTypes, 0);
+            Arrays.fill(typeX, base, base + numTypes, 0);
+            Arrays.fill(typeY, base, base + numTypes, 0);
+            if (child[n] < 0) {
+                for (int i = start[n]; i < end[n]; i++) {
+                    typeCount[base + type[i]]++;
+                    typeX[base + type[i]] += x[i];
+                    typeY[base + type[i]] += y[i];
+                }
+            } else {
+                // Children were added after their parent, so they are already summarized;
+                // their centroids are turned back into sums
+                for (int c = child[n]; c < child[n] + 4; c++) {
+                    int childBase = c * numTypes;
+                    for (int t = 0; t < numTypes; t++) {
+                        int count = typeCount[childBase + t];
+                        typeCount[base + t] += count;
+                        typeX[base + t] += typeX[childBase + t] * count;
+                        typeY[base + t] += typeY[childBase + t] * count;
+                    }
+                }
+            }
+            double sumX = 0;
+            double sumY = 0;
+            for (int t = 0; t < numTypes; t++) {
+                int count = typeCount[base + t];
+                sumX += typeX[base + t];
+                sumY += typeY[base + t];
+                if (count > 0) {
+                    typeX[base + t] /= count;
+                    typeY[base + t] /= count;
+                }
+            }
+            int total = end[n] - start[n];
+            centerX[n] = total > 0 ? sumX / total : 0.5 * (minX[n] + maxX[n]);
+            centerY[n] = total > 0 ? sumY / total : 0.5 * (minY[n] + maxY[n]);
+        }
+    }
+
+    // Adds the force on sorted particle k at (ax, ay) of type typeA to forceX/forceY[k] and
+    // returns the number of particles it interacted with, directly or through a centroid.
+    // stack is the caller's scratch space of stackSize() entries, so tiles can run at once.
+    long accumulate(int k, double ax, double ay, int typeA, int[] stack, double[] forceX, double[] forceY) {
+        double[] params = table.data;
+        int numTypes = this.numTypes;
+        double width = this.width;
+        double height = this.height;
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        double reachSquared = typeCutoffSquared[typeA];
+        double thetaSquared = theta * theta;
+        int paramsA = typeA * numTypes * InteractionTable.STRIDE;
+        double fx = 0;
+        double fy = 0;
+        long pairs = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int n = stack[--top];
+            if (end[n] == start[n]) continue;
+
+            // Gap between the particle and the node's box, through the nearest image
+            double boxX = wrap(0.5 * (minX[n] + maxX[n]) - ax, width, halfWidth);
+            double boxY = wrap(0.5 * (minY[n] + maxY[n]) - ay, height, halfHeight);
+            double halfSizeX = 0.5 * (maxX[n] - minX[n]);
+            double halfSizeY = 0.5 * (maxY[n] - minY[n]);
+            double gapX = Math.max(0, Math.abs(boxX) - halfSizeX);
+            double gapY = Math.max(0, Math.abs(boxY) - halfSizeY);
+            if (gapX * gapX + gapY * gapY >= reachSquared) continue;
+
+            if (child[n] < 0) {
+                for (int i = start[n]; i < end[n]; i++) {
+                    double dx = wrap(x[i] - ax, width, halfWidth);
+                    double dy = wrap(y[i] - ay, height, halfHeight);
+                    int p = paramsA + type[i] * InteractionTable.STRIDE;
+                    double distanceSquared = dx * dx + dy * dy;
+                    // Also skips the particle itself, whose distance is zero
+                    if (distanceSquared >= params[p + InteractionTable.CUTOFF_SQUARED] || distanceSquared == 0) continue;
+                    pairs++;
+                    double distance = Math.sqrt(distanceSquared);
+                    double scale = PhysicsEngine.forceScale(distance, params[p + InteractionTable.REPULSION],
+                            params[p + InteractionTable.INVERSE_MIN_DISTANCE], params[p + InteractionTable.ATTRACTION],
+                            params[p + InteractionTable.INVERSE_RADIUS]) / distance;
+                    fx += dx * scale;
+                    fy += dy * scale;
+                }
+                continue;
+            }
+
+            double size = Math.max(maxX[n] - minX[n], maxY[n] - minY[n]);
+            double cx = wrap(centerX[n] - ax, width, halfWidth);
+            double cy = wrap(centerY[n] - ay, height, halfHeight);
+            boolean outside = gapX > 0 || gapY > 0;
+            // A box across the seam half a world away from the particle has particles on both
+            // sides of it, whose nearest images lie apart, so its centroid stands for neither
+            boolean straddles = Math.abs(boxX) + halfSizeX > halfWidth || Math.abs(boxY) + halfSizeY > halfHeight;
+            if (!outside || straddles || size * size >= thetaSquared * (cx * cx + cy * cy)) {
+                for (int c = child[n]; c < child[n] + 4; c++) stack[top++] = c;
+                continue;
+            }
+
+            // Far enough: every type in the node acts from its centroid
+            int base = n * numTypes;
+            for (int t = 0; t < numTypes; t++) {
+                int count = typeCount[base + t];
+                if (count == 0) continue;
+                double dx = wrap(typeX[base + t] - ax, width, halfWidth);
+                double dy = wrap(typeY[base + t] - ay, height, halfHeight);
+                int p = paramsA + t * InteractionTable.STRIDE;
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared >= params[p + InteractionTable.CUTOFF_SQUARED] || distanceSquared == 0) continue;
+                pairs += count;
+                double distance = Math.sqrt(distanceSquared);
+                double scale = PhysicsEngine.forceScale(distance, params[p + InteractionTable.REPULSION],
+                        params[p + InteractionTable.INVERSE_MIN_DISTANCE], params[p + InteractionTable.ATTRACTION],
+                        params[p + InteractionTable.INVERSE_RADIUS]) * count / distance;
+                fx += dx * scale;
+                fy += dy * scale;
+            }
+        }
+        forceX[k] += fx;
+        forceY[k] += fy;
+        return pairs;
+    }
+
+    // A traversal holds at most three siblings per level plus the four children of the last
+    static int stackSize() {
+        return 3 * MAX_DEPTH + 4;
+    }
+
+    private static double wrap(double d, double size, double half) {
+        if (d > half) return d - size;
+        if (d < -half) return d + size;
+        return d;
+    }
+}
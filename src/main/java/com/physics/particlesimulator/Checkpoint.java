@@ -0,0 +1,150 @@
+package com.physics.particlesimulator;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Saved world: interaction parameters and every particle's state, in a versioned binary
+// file that is written and read through a memory-mapped buffer with bulk array copies.
+//
+// Layout, little-endian, every section 8-byte aligned:
+//   header   64 bytes: magic "PSCK", version, numTypes, particle count, tick, width, height
+//   params   forces, minDistance, radii as numTypes * numTypes doubles each, row-major
+//   state    x, y, vx, vy as count doubles each, then type as count ints
+public class Checkpoint {
+    public static final int MAGIC = 0x4B435350; // "PSCK" read as little-endian bytes
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    public final double width;
+    public final double height;
+    public final long tick;
+    public final double[][] forces;
+    public final double[][] minDistance;
+    public final double[][] radii;
+    public final ParticleStore particles;
+
+    public Checkpoint(double width, double height, long tick, double[][] forces, double[][] minDistance,
+                      double[][] radii, ParticleStore particles) {
+        this.width = width;
+        this.height = height;
+        this.tick = tick;
+        this.forces = forces;
+        this.minDistance = minDistance;
+        this.radii = radii;
+        this.particles = particles;
+    }
+
+    // Snapshot of a world's current parameters and particles. The particles are not copied,
+    // so save the checkpoint before the world steps again.
+    public static Checkpoint capture(World world) {
+        InteractionTable table = world.getEngine().getTable();
+        return new Checkpoint(world.width, world.height, world.getTick(), table.forces(), table.minDistances(),
+                table.radii(), world.getParticles());
+    }
+
+    public InteractionTable table() {
+        return InteractionTable.of(forces, minDistance, radii);
+    }
+
+    private static long fileSize(int numTypes, int count) {
+        return HEADER_BYTES + 3L * numTypes * numTypes * Double.BYTES + 4L * count * Double.BYTES
+                + (long) count * Integer.BYTES;
+    }
+
+    public void save(Path path) throws IOException {
+        int numTypes = forces.length;
+        int count = particles.size();
+        long size = fileSize(numTypes, count);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint of " + count + " particles exceeds the 2 GB mapping limit");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(numTypes);
+            buffer.putInt(count);
+            buffer.putLong(tick);
+            buffer.putDouble(width);
+            buffer.putDouble(height);
+            buffer.position(HEADER_BYTES);
+
+            for (double[][] matrix : new double[][][] {forces, minDistance, radii}) {
+                for (double[] row : matrix) {
+                    buffer.asDoubleBuffer().put(row, 0, numTypes);
+                    buffer.position(buffer.position() + numTypes * Double.BYTES);
+                }
+            }
+            for (double[] values : new double[][] {particles.x, particles.y, particles.vx, particles.vy}) {
+                buffer.asDoubleBuffer().put(values, 0, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+            }
+            buffer.asIntBuffer().put(particles.type, 0, count);
+            buffer.force();
+        }
+    }
+
+    public static Checkpoint load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + path);
+            }
+            int numTypes = buffer.getInt();
+            int count = buffer.getInt();
+            long tick = buffer.getLong();
+            double width = buffer.getDouble();
+            double height = buffer.getDouble();
+            if (numTypes <= 0 || count < 0 || fileSize != fileSize(numTypes, count)) {
+                throw new IOException("Truncated or corrupt checkpoint: " + path);
+            }
+            if (numTypes > InteractionTable.MAX_TYPES) {
+                throw new IOException("Checkpoint has " + numTypes + " particle types, more than the supported "
+                        + InteractionTable.MAX_TYPES + ": " + path);
+            }
+            buffer.position(HEADER_BYTES);
+
+            double[][][] matrices = new double[3][numTypes][numTypes];
+            for (double[][] matrix : matrices) {
+                for (double[] row : matrix) {
+                    buffer.asDoubleBuffer().get(row);
+                    buffer.position(buffer.position() + numTypes * Double.BYTES);
+                }
+            }
+
+            ParticleStore particles = new ParticleStore(count);
+            particles.resize(count);
+            for (double[] values : new double[][] {particles.x, particles.y, particles.vx, particles.vy}) {
+                buffer.asDoubleBuffer().get(values, 0, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+            }
+            buffer.asIntBuffer().get(particles.type, 0, count);
+            // The kernels index the parameters by type, so a stray type would fail mid-step
+            for (int i = 0; i < count; i++) {
+                int type = particles.type[i];
+                if (type < 0 || type >= numTypes) {
+                    throw new IOException("Particle " + i + " has type " + type + ", outside the checkpoint's "
+                            + numTypes + " types: " + path);
+                }
+            }
+
+            return new Checkpoint(width, height, tick, matrices[0], matrices[1], matrices[2], particles);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.physics.particlesimulator;
+
+import java.util.Arrays;
+
+// Float-precision pair kernel for PhysicsEngine's float mode. Positions of the sorted index
+// are converted to float once per step and the type-pair parameters are flattened into
+// float tables indexed typeA * numTypes + typeB, so a neighbor range is a linear walk over
+// half the memory of the double kernel. The vector gathers index a table by neighbor type,
+// so each field gets its own array rather than InteractionTable's packed stride.
+// This is the scalar version; VectorFloatKernel
+// overrides accumulate() with jdk.incubator.vector when that module is present on JDK 21
+// or later.
+class FloatKernel {
+    // Zeroed slots after the last particle, so a vector load starting at any particle
+    // stays inside the arrays; the lanes past a range's end are masked off
+    static final int PADDING = 64;
+
+    protected InteractionTable table;
+    protected int numTypes;
+    protected float[] repulsion = new float[0];
+    protected float[] attraction = new float[0];
+    protected float[] inverseMinDistance = new float[0];
+    protected float[] inverseRadii = new float[0];
+    protected float[] cutoffSquared = new float[0];
+    protected float[] x = new float[0];
+    protected float[] y = new float[0];
+    protected int[] type = new int[0];
+    protected float width;
+    protected float height;
+
+    // The vector kernel where it pays off, the scalar one otherwise. JDK 17's JIT leaves
+    // this kernel's vectors boxed: an 18k-particle step allocated ~55 MB and took 27.8 ms
+    // against 24.0 ms scalar, where JDK 21 takes 14.7 ms and allocates nothing. Releases
+    // before 21 get the scalar kernel.
+    static FloatKernel create() {
+        if (Runtime.version().feature() >= 21) {
+            FloatKernel vector = vector();
+            if (vector != null) return vector;
+        }
+        return new FloatKernel();
+    }
+
+    // The vector kernel when jdk.incubator.vector is in the boot layer
+    // (--add-modules jdk.incubator.vector), null otherwise
+    static FloatKernel vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorFloatKernel();
+            } catch (LinkageError e) {
+                // Module present but unusable on this JVM
+            }
+        }
+        return null;
+    }
+
+    String name() {
+        return "scalar";
+    }
+
+    // Float tables for this step; rebuilt only when the engine's table has changed
+    void load(InteractionTable table) {
+        if (this.table == table) return;
+        this.table = table;
+        numTypes = table.numTypes;
+        repulsion = field(table, InteractionTable.REPULSION);
+        attraction = field(table, InteractionTable.ATTRACTION);
+        inverseMinDistance = field(table, InteractionTable.INVERSE_MIN_DISTANCE);
+        inverseRadii = field(table, InteractionTable.INVERSE_RADIUS);
+        cutoffSquared = field(table, InteractionTable.CUTOFF_SQUARED);
+    }
+
+    private static float[] field(InteractionTable table, int field) {
+        int pairs = table.numTypes * table.numTypes;
+        float[] values = new float[pairs];
+        for (int pair = 0; pair < pairs; pair++) {
+            values[pair] = (float) table.data[pair * InteractionTable.STRIDE + field];
+        }
+        return values;
+    }
+
+    // Grows the per-particle arrays to hold capacity particles, so load() does not have to
+    void reserve(int capacity) {
+        if (x.length < capacity + PADDING) {
+            x = new float[capacity + PADDING];
+            y = new float[capacity + PADDING];
+            type = new int[capacity + PADDING];
+        }
+    }
+
+    // Float copies of the index positions, and a copy of the types, for this step
+    void load(SpatialIndex index) {
+        int count = index.size();
+        if (x.length < count + PADDING) {
+            reserve(index.x.length);
+        }
+        double[] ix = index.x;
+        double[] iy = index.y;
+        for (int i = 0; i < count; i++) {
+            x[i] = (float) ix[i];
+            y[i] = (float) iy[i];
+        }
+        System.arraycopy(index.type, 0, type, 0, count);
+        Arrays.fill(type, count, count + PADDING, 0);
+        width = (float) index.width;
+        height = (float) index.height;
+    }
+
+    // Adds the force of sorted particles start .. end on sorted particle k to forceX/forceY[k]
+    // and returns how many of them were within the cutoff
+    long accumulate(int k, int start, int end, double[] forceX, double[] forceY) {
+        float ax = x[k];
+        float ay = y[k];
+        int base = type[k] * numTypes;
+        float halfWidth = 0.5f * width;
+        float halfHeight = 0.5f * height;
+        float fx = 0;
+        float fy = 0;
+        long pairs = 0;
+        for (int m = start; m < end; m++) {
+            float dx = x[m] - ax;
+            float dy = y[m] - ay;
+            if (dx > halfWidth) dx -= width;
+            else if (dx < -halfWidth) dx += width;
+            if (dy > halfHeight) dy -= height;
+            else if (dy < -halfHeight) dy += height;
+
+            int pair = base + type[m];
+            float distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared >= cutoffSquared[pair] || distanceSquared == 0) continue;
+            pairs++;
+
+            float distance = (float) Math.sqrt(distanceSquared);
+            float scale = 0;
+            float repulsionRamp = 1 - distance * inverseMinDistance[pair];
+            if (repulsionRamp > 0) scale += repulsion[pair] * repulsionRamp;
+            float attractionRamp = 1 - distance * inverseRadii[pair];
+            if (attractionRamp > 0) scale += attraction[pair] * attractionRamp;
+            scale /= distance;
+            fx += dx * scale;
+            fy += dy * scale;
+        }
+        forceX[k] += fx;
+        forceY[k] += fy;
+        return pairs;
+    }
+}
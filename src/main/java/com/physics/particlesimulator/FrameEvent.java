@@ -0,0 +1,41 @@
+package com.physics.particlesimulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// JFR event for one rendered frame on the JavaFX thread. Canvas calls only record drawing
+// commands, so these are the costs of recording them; rasterizing happens later in the
+// render pass.
+@Name("com.physics.particlesimulator.Frame")
+@Label("Rendered Frame")
+@Category("Particle Simulator")
+final class FrameEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(FrameEvent.class);
+
+    @Label("Grid Lines")
+    @Timespan(Timespan.NANOSECONDS)
+    long gridNanos;
+
+    @Label("Particle Drawing")
+    @Description("ParticleRenderer.draw")
+    @Timespan(Timespan.NANOSECONDS)
+    long particleNanos;
+
+    @Label("HUD")
+    @Timespan(Timespan.NANOSECONDS)
+    long hudNanos;
+
+    @Label("Particles")
+    int particles;
+
+    // Whether a recording has the event enabled. Checked before creating one, so frames
+    // allocate no event while none has.
+    static boolean enabled() {
+        return TYPE.isEnabled();
+    }
+}
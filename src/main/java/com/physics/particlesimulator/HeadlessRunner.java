@@ -0,0 +1,313 @@
+package com.physics.particlesimulator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+// Runs the simulation without JavaFX, stepping as fast as possible, and reports throughput.
+// The seed drives both the interaction parameters and the initial particles, so a run is
+// reproducible: the state hash printed at the end is the same for the same options, for
+// any thread count. --expect-hash fails the run when it differs from a golden value.
+// --load starts from a checkpoint instead, which fixes the world, types and particles;
+// --save writes the final state as a checkpoint. --record streams every measured step to
+// a trajectory file, so the reported throughput includes the recording overhead.
+// --precision float computes pair forces in float; run with --add-modules
+// jdk.incubator.vector on JDK 21 or later to get the vectorized kernel.
+// --worlds N runs N independent worlds with seeds S, S + 1, ... at the same time on one
+// shared pool, e.g. for a parameter sweep; --expect-hash, --save and --record then apply
+// to the first world.
+// --radius R draws interaction radii up to R instead of 250; with radii near world scale,
+// --theta T switches to the Barnes-Hut quadtree with opening angle T (e.g. 0.5).
+// --skin S keeps Verlet neighbor lists reaching S beyond the cutoff (e.g. 20), rebuilt
+// only when a particle has moved S / 2; it pays off once particles have slowed down.
+// --dt T simulates T time units per step instead of 1, trading accuracy for simulated time.
+// --substeps N treats every N steps as one frame whose index is read only at its end,
+// so list mode skips the index rebuild on the other steps.
+// Usage: HeadlessRunner [--particles N] [--width W] [--height H] [--types T] [--seed S]
+//                       [--steps N] [--warmup N] [--threads N] [--symmetric true|false]
+//                       [--precision double|float] [--worlds N] [--radius R] [--theta T]
+//                       [--skin S] [--dt T] [--substeps N] [--expect-hash HEX]
+//                       [--load FILE] [--save FILE] [--record FILE]
+public class HeadlessRunner {
+    int particles = 18000;
+    int width = 10000;
+    int height = 6000;
+    int types = 7;
+    long seed = 1;
+    int steps = 1000;
+    int warmup = 50;
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean symmetric = true;
+    boolean floatPrecision = false;
+    int worlds = 1;
+    double maxRadius = InteractionTable.DEFAULT_MAX_RADIUS;
+    double theta = 0;
+    double skin = 0;
+    double dt = 1;
+    int substeps = 1;
+    String expectedHash;
+    Path loadPath;
+    Path savePath;
+    Path recordPath;
+
+    public static void main(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            runner.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: HeadlessRunner [--particles N] [--width W] [--height H] [--types T] [--seed S]"
+                    + " [--steps N] [--warmup N] [--threads N] [--symmetric true|false] [--precision double|float]"
+                    + " [--worlds N] [--radius R] [--theta T] [--skin S] [--dt T] [--substeps N]"
+                    + " [--expect-hash HEX]"
+                    + " [--load FILE] [--save FILE] [--record FILE]");
+            System.exit(2);
+        }
+        try {
+            System.exit(runner.run() ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Checkpoint error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            String value;
+            int equals = option.indexOf('=');
+            if (equals >= 0) {
+                value = option.substring(equals + 1);
+                option = option.substring(0, equals);
+            } else if (i + 1 < args.length) {
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+
+            try {
+                switch (option) {
+                    case "--particles" -> particles = Integer.parseInt(value);
+                    case "--width" -> width = Integer.parseInt(value);
+                    case "--height" -> height = Integer.parseInt(value);
+                    case "--types" -> types = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--steps" -> steps = Integer.parseInt(value);
+                    case "--warmup" -> warmup = Integer.parseInt(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--symmetric" -> symmetric = Boolean.parseBoolean(value);
+                    case "--precision" -> floatPrecision = switch (value) {
+                        case "double" -> false;
+                        case "float" -> true;
+                        default -> throw new IllegalArgumentException("Invalid value for --precision: " + value);
+                    };
+                    case "--worlds" -> worlds = Integer.parseInt(value);
+                    case "--radius" -> maxRadius = Double.parseDouble(value);
+                    case "--theta" -> theta = Double.parseDouble(value);
+                    case "--skin" -> skin = Double.parseDouble(value);
+                    case "--dt" -> dt = Double.parseDouble(value);
+                    case "--substeps" -> substeps = Integer.parseInt(value);
+                    case "--expect-hash" -> expectedHash = value;
+                    case "--load" -> loadPath = Path.of(value);
+                    case "--save" -> savePath = Path.of(value);
+                    case "--record" -> recordPath = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+        if (particles < 1) {
+            throw new IllegalArgumentException("--particles must be at least 1");
+        }
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("--width and --height must be at least 1");
+        }
+        if (types < 1 || types > InteractionTable.MAX_TYPES) {
+            throw new IllegalArgumentException("--types must be between 1 and " + InteractionTable.MAX_TYPES);
+        }
+        if (steps < 0 || warmup < 0) {
+            throw new IllegalArgumentException("--steps and --warmup must not be negative");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads must be at least 1");
+        }
+        if (worlds < 1) {
+            throw new IllegalArgumentException("--worlds must be at least 1");
+        }
+        if (!(maxRadius > InteractionTable.MIN_RADIUS)) {
+            throw new IllegalArgumentException("--radius must be above " + InteractionTable.MIN_RADIUS);
+        }
+        if (theta < 0) {
+            throw new IllegalArgumentException("--theta must not be negative");
+        }
+        if (!(skin >= 0)) {
+            throw new IllegalArgumentException("--skin must not be negative");
+        }
+        if (!(dt > 0)) {
+            throw new IllegalArgumentException("--dt must be positive");
+        }
+        if (substeps < 1) {
+            throw new IllegalArgumentException("--substeps must be at least 1");
+        }
+    }
+
+    boolean run() throws IOException {
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        World[] worlds = new World[this.worlds];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = createWorld(seed + i);
+            PhysicsEngine engine = worlds[i].getEngine();
+            engine.setPool(pool);
+            engine.setSymmetric(symmetric);
+            engine.setFloatPrecision(floatPrecision);
+            engine.setOpeningAngle(theta);
+            engine.setNeighborSkin(skin);
+            engine.setTimeStep(dt);
+        }
+        World first = worlds[0];
+        PhysicsEngine engine = first.getEngine();
+        if (loadPath != null) {
+            System.out.printf("Loaded %s at tick %d%n", loadPath, first.getTick());
+        }
+
+        System.out.printf("Particles: %d  World: %d x %d  Types: %d  Seed: %d  Threads: %d  Symmetric: %b  Precision: %s%n",
+                particles, width, height, types, seed, engine.getThreads(), symmetric,
+                floatPrecision ? "float (" + engine.getFloatKernelName() + ")" : "double");
+        if (theta > 0) {
+            System.out.printf("Barnes-Hut: opening angle %.2f  Max radius: %.0f%n", theta, maxRadius);
+        } else if (skin > 0) {
+            System.out.printf("Neighbor lists: skin %.1f%n", skin);
+        }
+        if (dt != 1 || substeps > 1) {
+            System.out.printf("Time step: %.3f  Substeps: %d%n", dt, substeps);
+        }
+        if (worlds.length > 1) {
+            System.out.printf("Worlds: %d (seeds %d - %d) on one shared pool%n", worlds.length, seed, seed + worlds.length - 1);
+        }
+
+        runWorlds(pool, worlds, warmup, substeps, null, new StepMetrics());
+
+        TrajectoryRecorder recorder = recordPath != null
+                ? new TrajectoryRecorder(recordPath, width, height, types, 100, 8) : null;
+        StepMetrics phases = new StepMetrics();
+        long start = System.nanoTime();
+        long pairs = runWorlds(pool, worlds, steps, substeps, recorder, phases);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (recorder != null) {
+            recorder.close();
+            System.out.printf("Recorded %d frames to %s (%d dropped)%n",
+                    recorder.getRecorded(), recordPath, recorder.getDropped());
+        }
+
+        SpatialIndex index = first.getIndex();
+        System.out.printf("Cutoff: %.1f  Cell: %.1f x %.1f  Grid: %d x %d%n", engine.getCutoff(),
+                index.cellWidth, index.cellHeight, index.gridWidth, index.gridHeight);
+        System.out.printf("Steps: %d in %.3f s (%.1f steps/sec, %.2f ms/step)%n",
+                steps, seconds, steps / seconds, seconds * 1000 / steps);
+        if (worlds.length > 1) {
+            long worldSteps = (long) steps * worlds.length;
+            System.out.printf("World steps: %d (%.1f world steps/sec)%n", worldSteps, worldSteps / seconds);
+        }
+        System.out.printf("Pair interactions: %d (%.3e pairs/sec)%n", pairs, pairs / seconds);
+        if (steps > 0) {
+            // Outside symmetric mode integration runs inside the force pass
+            String integrate = phases.integratedSteps > 0
+                    ? String.format("%.2f ms", phases.integrateNanos / 1e6 / phases.integratedSteps) : "n/a (in forces)";
+            System.out.printf("Phases per step: forces %.2f ms  integrate %s  index %.2f ms%n",
+                    phases.forceNanos / 1e6 / steps, integrate, phases.indexNanos / 1e6 / steps);
+            if (theta > 0) {
+                // The tree checks nodes rather than candidate pairs
+                System.out.printf("Per step: %d interactions, with particles or node centroids, %d migrated  Max cell: %d%n",
+                        phases.pairs / steps, phases.migrated / steps, phases.maxCellOccupancy);
+            } else {
+                System.out.printf("Per step: %d candidate pairs, %d within cutoff (%.1f%%), %d migrated  Max cell: %d%n",
+                        phases.candidatePairs / steps, phases.pairs / steps, 100.0 * phases.pairs / Math.max(1, phases.candidatePairs),
+                        phases.migrated / steps, phases.maxCellOccupancy);
+            }
+        }
+        if (skin > 0 && theta == 0) {
+            System.out.printf("Neighbor lists rebuilt in %d of %d steps%n", phases.listBuilds, steps);
+        }
+
+        if (savePath != null) {
+            Checkpoint.capture(first).save(savePath);
+            System.out.printf("Saved %s%n", savePath);
+        }
+
+        for (int i = 1; i < worlds.length; i++) {
+            System.out.printf("World %d state hash: %016x%n", i, worlds[i].getParticles().stateHash());
+        }
+        String hash = String.format("%016x", first.getParticles().stateHash());
+        System.out.printf("State hash after %d steps: %s%n", warmup + steps, hash);
+        if (expectedHash != null && !expectedHash.equalsIgnoreCase(hash)) {
+            System.out.printf("State hash mismatch: expected %s%n", expectedHash);
+            return false;
+        }
+        return true;
+    }
+
+    private World createWorld(long worldSeed) throws IOException {
+        if (loadPath == null) {
+            return World.random(width, height, types, particles, worldSeed, maxRadius);
+        }
+        // Every world loads its own copy of the particles
+        Checkpoint checkpoint = Checkpoint.load(loadPath);
+        particles = checkpoint.particles.size();
+        width = (int) checkpoint.width;
+        height = (int) checkpoint.height;
+        types = checkpoint.forces.length;
+        return World.restore(checkpoint, worldSeed);
+    }
+
+    // Steps every world the given number of times, the worlds in parallel when there is a
+    // pool, and returns the total pair count. Only the first world is recorded, and only
+    // its step metrics are summed into phases.
+    private static long runWorlds(ForkJoinPool pool, World[] worlds, int steps, int substeps,
+                                  TrajectoryRecorder recorder, StepMetrics phases) {
+        long[] pairs = new long[worlds.length];
+        if (pool == null || worlds.length == 1) {
+            for (int i = 0; i < worlds.length; i++) {
+                pairs[i] = i == 0 ? stepWorld(worlds[i], steps, substeps, recorder, phases)
+                        : stepWorld(worlds[i], steps, substeps, null, null);
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < worlds.length; i++) {
+                int world = i;
+                tasks.add(() -> {
+                    pairs[world] = world == 0 ? stepWorld(worlds[world], steps, substeps, recorder, phases)
+                            : stepWorld(worlds[world], steps, substeps, null, null);
+                    return null;
+                });
+            }
+            pool.invokeAll(tasks);
+        }
+        long total = 0;
+        for (long worldPairs : pairs) total += worldPairs;
+        return total;
+    }
+
+    // The index is brought up to date at the end of every frame of substeps and after the last step
+    private static long stepWorld(World world, int steps, int substeps, TrajectoryRecorder recorder,
+                                  StepMetrics phases) {
+        long pairs = 0;
+        for (int step = 0; step < steps; step++) {
+            world.step((step + 1) % substeps == 0 || step == steps - 1);
+            pairs += world.getEngine().getPairCount();
+            if (phases != null) {
+                phases.add(world.getEngine().getMetrics());
+            }
+            if (recorder != null) {
+                recorder.record(world.getParticles(), world.getTick());
+            }
+        }
+        return pairs;
+    }
+}
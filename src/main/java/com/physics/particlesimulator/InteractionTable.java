@@ -0,0 +1,148 @@
+package com.physics.particlesimulator;
+
+import java.util.SplittableRandom;
+
+// Immutable interaction parameters for every ordered pair of particle types, packed into
+// one array with STRIDE doubles per pair: the values the pair kernel needs for (a, b) sit
+// next to each other at offset(a, b), instead of behind three two-level array lookups.
+// Reciprocals and squared cutoffs are precomputed. A table is never modified after it is
+// built, so the engine can swap in a new one at any time and a step that already read the
+// old one finishes with it.
+public final class InteractionTable {
+    public static final int MAX_TYPES = 64;
+    // Range of random interaction radii; long-range rule sets raise the upper end
+    public static final double MIN_RADIUS = 70;
+    public static final double DEFAULT_MAX_RADIUS = 250;
+
+    // Field offsets within a pair's stride
+    static final int REPULSION = 0;
+    static final int ATTRACTION = 1;
+    static final int INVERSE_MIN_DISTANCE = 2;
+    static final int INVERSE_RADIUS = 3;
+    static final int CUTOFF_SQUARED = 4;
+    static final int PAIR_CUTOFF_SQUARED = 5; // larger of (a, b) and (b, a), for symmetric mode
+    static final int STRIDE = 8; // 8 doubles per pair; the last two slots are unused
+
+    public final int numTypes;
+    public final double cutoff; // largest interaction distance of any type pair
+    final double[] data;
+
+    // The parameters the table was built from, kept for accessors and checkpoints
+    private final double[][] forces;
+    private final double[][] minDistance;
+    private final double[][] radii;
+
+    private InteractionTable(double[][] forces, double[][] minDistance, double[][] radii) {
+        int numTypes = forces.length;
+        if (numTypes < 1 || numTypes > MAX_TYPES) {
+            throw new IllegalArgumentException("Type count must be between 1 and " + MAX_TYPES + ": " + numTypes);
+        }
+        for (int i = 0; i < numTypes; i++) {
+            if (forces[i].length != numTypes || minDistance.length != numTypes || minDistance[i].length != numTypes
+                    || radii.length != numTypes || radii[i].length != numTypes) {
+                throw new IllegalArgumentException("Parameter matrices must all be " + numTypes + " x " + numTypes);
+            }
+        }
+        this.numTypes = numTypes;
+        this.forces = copy(forces);
+        this.minDistance = copy(minDistance);
+        this.radii = copy(radii);
+
+        double[] data = new double[numTypes * numTypes * STRIDE];
+        double maxCutoffSquared = 0;
+        for (int i = 0; i < numTypes; i++) {
+            for (int j = 0; j < numTypes; j++) {
+                int p = (i * numTypes + j) * STRIDE;
+                data[p + REPULSION] = Math.abs(forces[i][j]) * -3 * PhysicsEngine.K;
+                data[p + ATTRACTION] = forces[i][j] * PhysicsEngine.K;
+                data[p + INVERSE_MIN_DISTANCE] = 1.0 / minDistance[i][j];
+                data[p + INVERSE_RADIUS] = 1.0 / radii[i][j];
+                double cutoff = Math.max(minDistance[i][j], radii[i][j]);
+                data[p + CUTOFF_SQUARED] = cutoff * cutoff;
+                maxCutoffSquared = Math.max(maxCutoffSquared, cutoff * cutoff);
+            }
+        }
+        for (int i = 0; i < numTypes; i++) {
+            for (int j = 0; j < numTypes; j++) {
+                data[(i * numTypes + j) * STRIDE + PAIR_CUTOFF_SQUARED] = Math.max(
+                        data[(i * numTypes + j) * STRIDE + CUTOFF_SQUARED],
+                        data[(j * numTypes + i) * STRIDE + CUTOFF_SQUARED]);
+            }
+        }
+        this.data = data;
+        this.cutoff = Math.sqrt(maxCutoffSquared);
+    }
+
+    // Table from explicit matrices, e.g. from a checkpoint. The matrices are copied.
+    public static InteractionTable of(double[][] forces, double[][] minDistance, double[][] radii) {
+        return new InteractionTable(forces, minDistance, radii);
+    }
+
+    // Draws new parameters from the given generator, so a seed reproduces them
+    public static InteractionTable random(int numTypes, SplittableRandom random) {
+        return random(numTypes, random, DEFAULT_MAX_RADIUS);
+    }
+
+    // Same, with interaction radii up to maxRadius, e.g. near world scale for Barnes-Hut mode
+    public static InteractionTable random(int numTypes, SplittableRandom random, double maxRadius) {
+        if (numTypes < 1 || numTypes > MAX_TYPES) {
+            throw new IllegalArgumentException("Type count must be between 1 and " + MAX_TYPES + ": " + numTypes);
+        }
+        if (!(maxRadius > MIN_RADIUS)) {
+            throw new IllegalArgumentException("Maximum radius must be above " + MIN_RADIUS + ": " + maxRadius);
+        }
+        double[][] forces = new double[numTypes][numTypes];
+        double[][] minDistance = new double[numTypes][numTypes];
+        double[][] radii = new double[numTypes][numTypes];
+
+        for (int i = 0; i < numTypes; i++) {
+            for (int j = 0; j < numTypes; j++) {
+                forces[i][j] = random.nextDouble(0.3, 1.0);
+                if (random.nextDouble(100) < 50) {
+                    forces[i][j] *= -1;
+                }
+                minDistance[i][j] = random.nextDouble(30, 50);
+                radii[i][j] = random.nextDouble(MIN_RADIUS, maxRadius);
+            }
+        }
+        return new InteractionTable(forces, minDistance, radii);
+    }
+
+    // Start of the parameters of type a acting on type b in data
+    int offset(int a, int b) {
+        return (a * numTypes + b) * STRIDE;
+    }
+
+    public double force(int a, int b) {
+        return forces[a][b];
+    }
+
+    public double minDistance(int a, int b) {
+        return minDistance[a][b];
+    }
+
+    public double radius(int a, int b) {
+        return radii[a][b];
+    }
+
+    // Copies of the source matrices
+    public double[][] forces() {
+        return copy(forces);
+    }
+
+    public double[][] minDistances() {
+        return copy(minDistance);
+    }
+
+    public double[][] radii() {
+        return copy(radii);
+    }
+
+    private static double[][] copy(double[][] matrix) {
+        double[][] copy = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,243 @@
+package com.physics.particlesimulator;
+
+import java.util.Arrays;
+
+// Verlet neighbor lists for PhysicsEngine's list mode. Every particle keeps the particles
+// within its pair cutoff plus a skin, found once through the cell stencil, and the lists
+// are reused until some particle has moved more than half the skin since they were built:
+// until then no pair can have closed the gap of a whole skin, so every pair within the
+// cutoff is still listed. Slots are the index's sorted order at build time; each step the
+// current positions are gathered into that order, so the force loop walks nearby memory
+// while the index is rebuilt underneath. Lists are flat: the neighbors of slot s are
+// neighbors[listStart[s] .. listStart[s + 1]].
+class NeighborList {
+    private static final int HEADROOM = 4; // the lists may grow by 1 / HEADROOM before the array is reallocated
+
+    private final double skin;
+
+    private InteractionTable table;
+    private int numTypes;
+    private double[] listCutoffSquared = new double[0]; // (pair cutoff + skin)^2 at a * numTypes + b
+
+    // Slot s holds particle order[s] of the store
+    private ParticleStore particles;
+    private long generation;
+    private int count = -1;
+    int[] order = new int[0];
+    double[] x = new double[0];
+    double[] y = new double[0];
+    private int[] type = new int[0];
+    private double[] builtX = new double[0]; // positions when the lists were built
+    private double[] builtY = new double[0];
+    private int[] listStart = new int[1];
+    private int[] neighbors = new int[0];
+    private double width;
+    private double height;
+    private long builds;
+
+    NeighborList(double skin) {
+        this.skin = skin;
+    }
+
+    double skin() {
+        return skin;
+    }
+
+    // Lists built since this one was created
+    long builds() {
+        return builds;
+    }
+
+    // Grows the arrays to hold capacity particles, keeping the current lists, and the list
+    // array by as much as the particle count grows, so the next build is unlikely to grow
+    // it. Returns the size of the list array.
+    int reserve(int capacity) {
+        if (order.length < capacity) {
+            order = Arrays.copyOf(order, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            type = Arrays.copyOf(type, capacity);
+            builtX = Arrays.copyOf(builtX, capacity);
+            builtY = Arrays.copyOf(builtY, capacity);
+            listStart = Arrays.copyOf(listStart, capacity + 1);
+        }
+        if (count > 0) {
+            long entries = (long) listStart[count] * capacity / count;
+            long size = Math.min(Integer.MAX_VALUE - 8, entries + entries / HEADROOM);
+            if (neighbors.length < size) {
+                neighbors = Arrays.copyOf(neighbors, (int) size);
+            }
+        }
+        return neighbors.length;
+    }
+
+    // Gathers the current positions into slot order and returns whether the lists have to
+    // be rebuilt first: a particle moved more than half the skin, counted through the
+    // nearest periodic image, or particles were added or removed, or the parameters or
+    // world have changed
+    boolean load(ParticleStore particles, InteractionTable table, SpatialIndex index) {
+        if (particles != this.particles || particles.generation() != generation || table != this.table
+                || index.width != width || index.height != height) {
+            return true;
+        }
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        double limitSquared = 0.25 * skin * skin;
+        for (int s = 0; s < count; s++) {
+            int a = order[s];
+            double px = particles.x[a];
+            double py = particles.y[a];
+            double dx = px - builtX[s];
+            double dy = py - builtY[s];
+            if (dx > halfWidth) dx -= width;
+            else if (dx < -halfWidth) dx += width;
+            if (dy > halfHeight) dy -= height;
+            else if (dy < -halfHeight) dy += height;
+            if (dx * dx + dy * dy > limitSquared) return true;
+            x[s] = px;
+            y[s] = py;
+        }
+        return false;
+    }
+
+    // Starts a rebuild from the sorted index, which must hold the current positions. The
+    // lists are then collected slot by slot into buffers of the caller, and moved into
+    // place with place() once finish() has laid them out.
+    void begin(ParticleStore particles, SpatialIndex index, InteractionTable table) {
+        if (table != this.table) {
+            this.table = table;
+            numTypes = table.numTypes;
+            listCutoffSquared = new double[numTypes * numTypes];
+            for (int pair = 0; pair < numTypes * numTypes; pair++) {
+                double reach = Math.sqrt(table.data[pair * InteractionTable.STRIDE + InteractionTable.CUTOFF_SQUARED]) + skin;
+                listCutoffSquared[pair] = reach * reach;
+            }
+        }
+        this.particles = particles;
+        generation = particles.generation();
+        count = index.size();
+        width = index.width;
+        height = index.height;
+        if (order.length < count) {
+            reserve(index.x.length);
+        }
+        System.arraycopy(index.particleIndex, 0, order, 0, count);
+        System.arraycopy(index.x, 0, x, 0, count);
+        System.arraycopy(index.y, 0, y, 0, count);
+        System.arraycopy(index.type, 0, type, 0, count);
+        System.arraycopy(index.x, 0, builtX, 0, count);
+        System.arraycopy(index.y, 0, builtY, 0, count);
+        builds++;
+    }
+
+    // Writes the particles start .. end of one stencil cell that are within reach of slot k
+    // into out from position at on, which must have room for all of them, and returns the
+    // position after them
+    int collect(int k, int start, int end, int[] out, int at) {
+        double ax = x[k];
+        double ay = y[k];
+        int base = type[k] * numTypes;
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        for (int m = start; m < end; m++) {
+            double dx = x[m] - ax;
+            double dy = y[m] - ay;
+            if (dx > halfWidth) dx -= width;
+            else if (dx < -halfWidth) dx += width;
+            if (dy > halfHeight) dy -= height;
+            else if (dy < -halfHeight) dy += height;
+            // By slot rather than by distance, so coincident particles still list each other
+            if (dx * dx + dy * dy >= listCutoffSquared[base + type[m]] || m == k) continue;
+            out[at++] = m;
+        }
+        return at;
+    }
+
+    // Records the length of slot s's list
+    void setLength(int s, int length) {
+        listStart[s + 1] = length;
+    }
+
+    // Turns the recorded lengths into list starts and makes room for the lists
+    void finish() {
+        listStart[0] = 0;
+        for (int s = 0; s < count; s++) listStart[s + 1] += listStart[s];
+        if (neighbors.length < listStart[count]) {
+            neighbors = new int[listStart[count] + listStart[count] / HEADROOM];
+        }
+    }
+
+    // Copies the lists of slots from .. to, collected back to back into buffer, into place
+    void place(int[] buffer, int from, int to) {
+        System.arraycopy(buffer, 0, neighbors, listStart[from], listStart[to] - listStart[from]);
+    }
+
+    // The list array itself, for a build that collects all slots in one go and so needs no
+    // place(); replaced by the grown buffer through setNeighbors()
+    int[] neighbors() {
+        return neighbors;
+    }
+
+    void setNeighbors(int[] neighbors) {
+        this.neighbors = neighbors;
+    }
+
+    // Listed pairs, i.e. the distance checks of one force pass
+    long entries() {
+        return listStart[count];
+    }
+
+    // First slot whose list starts at or after the given entry, for splitting into tiles
+    int slotAtEntry(long entry) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (listStart[mid] < entry) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // Adds the force of slot s's listed neighbors within their cutoff to forceX/forceY[s]
+    // and returns how many there were
+    long accumulate(int s, double[] forceX, double[] forceY) {
+        double[] params = table.data;
+        double[] x = this.x;
+        double[] y = this.y;
+        int[] type = this.type;
+        int[] neighbors = this.neighbors;
+        double ax = x[s];
+        double ay = y[s];
+        int paramsA = type[s] * numTypes * InteractionTable.STRIDE;
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        double fx = 0;
+        double fy = 0;
+        long pairs = 0;
+        for (int j = listStart[s]; j < listStart[s + 1]; j++) {
+            int m = neighbors[j];
+            double dx = x[m] - ax;
+            double dy = y[m] - ay;
+            if (dx > halfWidth) dx -= width;
+            else if (dx < -halfWidth) dx += width;
+            if (dy > halfHeight) dy -= height;
+            else if (dy < -halfHeight) dy += height;
+
+            int p = paramsA + type[m] * InteractionTable.STRIDE;
+            double distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared >= params[p + InteractionTable.CUTOFF_SQUARED] || distanceSquared == 0) continue;
+            pairs++;
+
+            double distance = Math.sqrt(distanceSquared);
+            double scale = PhysicsEngine.forceScale(distance, params[p + InteractionTable.REPULSION],
+                    params[p + InteractionTable.INVERSE_MIN_DISTANCE], params[p + InteractionTable.ATTRACTION],
+                    params[p + InteractionTable.INVERSE_RADIUS]) / distance;
+            fx += dx * scale;
+            fy += dy * scale;
+        }
+        forceX[s] += fx;
+        forceY[s] += fy;
+        return pairs;
+    }
+}
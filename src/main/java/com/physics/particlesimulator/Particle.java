@@ -6,7 +6,8 @@ import javafx.scene.paint.Color;
 public class Particle {
     Vector2D position;
     Vector2D velocity;
-    public double radius = 3; // radius of the particles.
+    public static final double RADIUS = 3;
+    public double radius = RADIUS; // radius of the particles.
     public int type;
     public Color color;
 
@@ -3,20 +3,28 @@ package com.physics.particlesimulator;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyCode;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Path;
 
 public class ParticleApplication extends Application {
+    private static final int BRUSH_PARTICLES = 20; // spawned per mouse event of the brush
+
     // FPS Variables
     private long lastUpdateTime = 0;
     private int frameCount = 0;
     private long lastFpsUpdateTime = 0;
     private double currentFps = 0;
 
+    private SimulationLoop simulation;
+    private TrajectoryRecorder recorder;
+    private ReplayPlayer replay;
+    private final SimulationMetrics metrics = new SimulationMetrics();
+    private boolean showMetrics = false;
+
     @Override
     public void start(Stage stage) throws IOException {
 
@@ -25,8 +33,19 @@ public class ParticleApplication extends Application {
         javafx.scene.canvas.Canvas canvas = particleCanvas.getCanvas();
         GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
 
-        int worldWidth = 10000;
-        int worldHeight = 6000;
+        // Physics tick rate, which is also the replay rate at 1x speed
+        double ticksPerSecond = Double.parseDouble(System.getProperty("tps", "60"));
+
+        // -Dreplay=<file> plays a recorded trajectory instead of simulating; PhysicsEngine is never used
+        String replayPath = System.getProperty("replay");
+        replay = replayPath != null ? new ReplayPlayer(Path.of(replayPath), ticksPerSecond) : null;
+
+        // -Dcheckpoint=<file> resumes a saved world instead of generating one
+        String checkpointPath = System.getProperty("checkpoint");
+        Checkpoint checkpoint = checkpointPath != null && replay == null ? Checkpoint.load(Path.of(checkpointPath)) : null;
+
+        int worldWidth = replay != null ? (int) replay.width : checkpoint != null ? (int) checkpoint.width : 10000;
+        int worldHeight = replay != null ? (int) replay.height : checkpoint != null ? (int) checkpoint.height : 6000;
         double screenWidth = canvas.getWidth();
         double screenHeight = canvas.getHeight();
         double padding = 100;
@@ -45,48 +64,17 @@ public class ParticleApplication extends Application {
         camera.zoom = camera.maxZoom;
         camera.centerOnWorld(worldWidth, worldHeight, screenWidth, screenHeight);
 
-
-        int numTypes = 7;
-        PhysicsEngine.setParameters(numTypes);
-
-        int numParticles = 18000;
-        // int maxDistance = 100;
-        int gridSize = 250;
-        int gridWidth = worldWidth / gridSize;
-        int gridHeight = worldHeight / gridSize;
-
-        ArrayList<Particle>[][] particles = new ArrayList[gridHeight][gridWidth];
-        List<Particle> particleList = new ArrayList<>();
-
-        for (int row = 0; row < gridHeight; row++) {
-            for (int col = 0; col < gridWidth; col++) {
-                particles[row][col] = new ArrayList<Particle>();
-            }
-        }
-
-        for (int i = 0; i < numParticles; i++) {
-            double x = Vector2D.random(0, worldWidth);
-            double y = Vector2D.random(0, worldHeight);
-            Vector2D pos = new Vector2D(x, y);
-
-            double vx = Vector2D.random(-1, 1); // slight initial motion
-            double vy = Vector2D.random(-1, 1);
-            Vector2D vel = new Vector2D(vx, vy);
-
-            int type = (int) Vector2D.random(numTypes);
-            Color color = Color.hsb(360.0 * type / numTypes, 1.0, 1.0); // colorful by type
-
-            Particle p = new Particle(pos, vel ,type, color);
-            particleList.add(p);
-
-            int row = (int)(y / gridSize);
-            int col = (int)(x / gridSize);
-
-            if (row >= 0 && row < gridHeight && col >= 0 && col < gridWidth) {
-                particles[row][col].add(p);
-            } else {
-                System.out.printf("Out of bounds! x=%.2f, y=%.2f, col=%d, row=%d%n", x, y, col, row);
-            }
+        // Phase timings and counters: M toggles the overlay; also published over JMX and as JFR events
+        metrics.register();
+        particleCanvas.setOnToggleMetrics(() -> showMetrics = !showMetrics);
+
+        ParticleRenderer renderer;
+        if (replay != null) {
+            renderer = new ParticleRenderer(replay.numTypes);
+            particleCanvas.setOnRegenerate(() -> {});
+            bindReplayKeys(particleCanvas, replay, ticksPerSecond);
+        } else {
+            renderer = startSimulation(particleCanvas, checkpoint, checkpointPath, worldWidth, worldHeight, ticksPerSecond);
         }
 
         AnimationTimer timer = new AnimationTimer() {
@@ -110,8 +98,32 @@ public class ParticleApplication extends Application {
                 graphicsContext.setFill(Color.BLACK);
                 graphicsContext.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
 
-                PhysicsEngine.updateAll(particles, worldWidth, worldHeight);
+                SpatialIndex index;
+                String status;
+                String details;
+                if (replay != null) {
+                    try {
+                        replay.update(now);
+                    } catch (IOException e) {
+                        System.err.println("Replay failed: " + e.getMessage());
+                        stop();
+                    }
+                    index = replay.index;
+                    status = String.format("FPS: %.1f  Replay: tick %d (%d - %d)  Speed: %.2fx%s  Skipped frames: %d",
+                            currentFps, replay.getTick(), replay.firstTick, replay.lastTick, replay.getSpeed(),
+                            replay.isPaused() ? " (paused)" : "", replay.getSkippedFrames());
+                    details = "Space: pause  Up/Down: speed  Left/Right: keyframes  , / .: scrub";
+                } else {
+                    SimulationLoop.Frame frame = simulation.latest();
+                    index = frame.index;
+                    status = String.format("FPS: %.1f  Physics: %.1f ticks/s (tick %d)",
+                            currentFps, simulation.getTicksPerSecond(), frame.tick);
+                    details = String.format("Max Force Radius: %.1f", frame.cutoff);
+                }
                 camera.clampToWorld(worldWidth, worldHeight, canvas.getWidth(), canvas.getHeight());
+                FrameEvent event = FrameEvent.enabled() ? new FrameEvent() : null;
+                if (event != null) event.begin();
+                long gridStart = System.nanoTime();
 
                 // Draw grid lines
                 graphicsContext.setStroke(Color.rgb(255, 255, 255, 0.2)); // White with 20% opacity
@@ -123,9 +135,12 @@ public class ParticleApplication extends Application {
                 double worldEndX = camera.screenToWorldX(canvas.getWidth());
                 double worldEndY = camera.screenToWorldY(canvas.getHeight());
 
+                int gridWidth = index.gridWidth;
+                int gridHeight = index.gridHeight;
+
                 // Draw vertical grid lines
                 for (int col = 0; col <= gridWidth; col++) {
-                    double worldX = col * gridSize;
+                    double worldX = col * index.cellWidth;
                     // Only draw if line is within world bounds
                     if (worldX >= 0 && worldX <= worldWidth) {
                         double screenX = camera.worldToScreenX(worldX);
@@ -138,7 +153,7 @@ public class ParticleApplication extends Application {
 
                 // Draw horizontal grid lines
                 for (int row = 0; row <= gridHeight; row++) {
-                    double worldY = row * gridSize;
+                    double worldY = row * index.cellHeight;
                     // Only draw if line is within world bounds
                     if (worldY >= 0 && worldY <= worldHeight) {
                         double screenY = camera.worldToScreenY(worldY);
@@ -149,32 +164,150 @@ public class ParticleApplication extends Application {
                     }
                 }
 
-                for (int row = 0; row < gridHeight; row++) {
-                    for (int col = 0; col < gridWidth; col++) {
-                        for (Particle p : particles[row][col]) {
-                            p.display(graphicsContext, camera);
-                        }
-                    }
-                }
-
+                long particleStart = System.nanoTime();
+                renderer.draw(graphicsContext, camera, index);
+                long hudStart = System.nanoTime();
 
                 // Display FPS and grid size
                 graphicsContext.setFill(Color.WHITE);
-                graphicsContext.fillText(String.format("FPS: %.1f", currentFps), 10, 20);
-                graphicsContext.fillText(String.format("Grid Size: %d x %d (Cell: %d)", gridWidth, gridHeight, gridSize), 10, 40);
+                graphicsContext.fillText(status, 10, 20);
+                graphicsContext.fillText(String.format("Grid Size: %d x %d (Cell: %.1f)", gridWidth, gridHeight, index.cellWidth), 10, 40);
                 lastUpdateTime = now;
 
                 // World info display
-                graphicsContext.fillText(String.format("Particles: %d", numParticles), 10, 60);
+                graphicsContext.fillText(String.format("Particles: %d", index.size()), 10, 60);
                 graphicsContext.fillText(String.format("World: %d x %d", worldWidth, worldHeight), 10, 80);
-                graphicsContext.fillText(String.format("Max Force Radius: %.1f", 250.0), 10, 100);
+                graphicsContext.fillText(details, 10, 100);
                 graphicsContext.fillText(String.format("Camera: (%.1f, %.1f) Zoom: %.2f", camera.x, camera.y, camera.zoom), 10, 120);
-
+                if (showMetrics) {
+                    drawMetrics(graphicsContext, 140);
+                }
+                long hudEnd = System.nanoTime();
+
+                metrics.recordFrame(particleStart - gridStart, hudStart - particleStart, hudEnd - hudStart);
+                if (event != null && event.shouldCommit()) {
+                    event.gridNanos = particleStart - gridStart;
+                    event.particleNanos = hudStart - particleStart;
+                    event.hudNanos = hudEnd - hudStart;
+                    event.particles = index.size();
+                    event.commit();
+                }
             }
         };
         timer.start();
     }
 
+    private ParticleRenderer startSimulation(SimulationView particleCanvas, Checkpoint checkpoint, String checkpointPath,
+                                             int worldWidth, int worldHeight, double ticksPerSecond) throws IOException {
+        // Same seed, same run: pass -Dseed=<n> to reproduce one
+        long seed = Long.getLong("seed", System.nanoTime());
+        System.out.printf("Seed: %d%n", seed);
+
+        World world;
+        if (checkpoint != null) {
+            world = World.restore(checkpoint, seed);
+            System.out.printf("Loaded %s at tick %d%n", checkpointPath, checkpoint.tick);
+        } else {
+            world = World.random(worldWidth, worldHeight, 7, 18000, seed);
+        }
+        PhysicsEngine engine = world.getEngine();
+        engine.setThreads(Runtime.getRuntime().availableProcessors());
+        engine.setSymmetric(true);
+        // -Dprecision=float computes pair forces in float
+        engine.setFloatPrecision("float".equals(System.getProperty("precision")));
+        // -Ddt=<t> simulates t time units per tick (1 by default); -Dskin=<s> keeps Verlet
+        // neighbor lists, which also lets substeps skip the index rebuild
+        engine.setTimeStep(Double.parseDouble(System.getProperty("dt", "1")));
+        engine.setNeighborSkin(Double.parseDouble(System.getProperty("skin", "0")));
+        ParticleRenderer renderer = new ParticleRenderer(world.getNumTypes());
+
+        // Physics runs on its own thread; the render loop draws whatever frame it last published
+        simulation = new SimulationLoop(world, ticksPerSecond);
+        simulation.setMetrics(metrics);
+        // -Dsubsteps=<n> runs n ticks per published frame; -Dcatchup=<n> lets up to n frames
+        // run back to back after a stall before the backlog is dropped
+        simulation.setSubsteps(Integer.getInteger("substeps", 1));
+        simulation.setMaxCatchUp(Integer.getInteger("catchup", 4));
+        // -Drecord=<file> streams every tick to a trajectory file
+        String recordPath = System.getProperty("record");
+        if (recordPath != null) {
+            recorder = new TrajectoryRecorder(Path.of(recordPath), worldWidth, worldHeight,
+                    world.getNumTypes(), 100, 8);
+            simulation.setRecorder(recorder);
+        }
+        particleCanvas.setOnRegenerate(() -> simulation.submit(world::regenerate));
+        // The brush edits the world between frames; spawns and despawns take effect with the next step
+        particleCanvas.setOnBrush((x, y, radius, erase) -> simulation.submit(() -> {
+            if (erase) {
+                world.despawnWithin(x, y, radius);
+            } else {
+                world.spawnWithin(x, y, radius, BRUSH_PARTICLES);
+            }
+        }));
+
+        // Saving runs on the physics thread between ticks, so the store is never mid-step
+        Path savePath = Path.of(System.getProperty("checkpoint.out", "world.psck"));
+        particleCanvas.setOnSave(() -> simulation.submit(() -> {
+            try {
+                Checkpoint.capture(world).save(savePath);
+                System.out.printf("Saved %s at tick %d%n", savePath, world.getTick());
+            } catch (IOException e) {
+                System.err.println("Could not save checkpoint: " + e.getMessage());
+            }
+        }));
+        simulation.start();
+        return renderer;
+    }
+
+    // Metrics overlay, averaged over the last second. Step phases stay zero during a replay.
+    private void drawMetrics(GraphicsContext graphicsContext, double top) {
+        double integrate = metrics.getIntegrateMillis();
+        graphicsContext.fillText(String.format("Step: forces %.2f ms  integrate %s  index %.2f ms  (%.1f steps/s)",
+                metrics.getForceMillis(), Double.isNaN(integrate) ? "n/a" : String.format("%.2f ms", integrate),
+                metrics.getIndexMillis(), metrics.getStepsPerSecond()), 10, top);
+        graphicsContext.fillText(String.format("Pairs: %.0f candidates, %.0f within cutoff  Migrated: %.0f  Max cell: %d",
+                metrics.getCandidatePairs(), metrics.getPairs(), metrics.getMigrated(),
+                metrics.getMaxCellOccupancy()), 10, top + 20);
+        graphicsContext.fillText(String.format("Frame: grid %.2f ms  particles %.2f ms  HUD %.2f ms  (%.2f ms)",
+                metrics.getGridMillis(), metrics.getParticleDrawMillis(), metrics.getHudMillis(),
+                metrics.getFrameMillis()), 10, top + 40);
+    }
+
+    // Replay controls: space pauses, up/down change speed, left/right jump between keyframes,
+    // comma/period scrub by one second of recording
+    private void bindReplayKeys(SimulationView particleCanvas, ReplayPlayer replay, double ticksPerSecond) {
+        particleCanvas.bindKey(KeyCode.SPACE, replay::togglePause);
+        particleCanvas.bindKey(KeyCode.UP, () -> replay.scaleSpeed(2));
+        particleCanvas.bindKey(KeyCode.DOWN, () -> replay.scaleSpeed(0.5));
+        particleCanvas.bindKey(KeyCode.LEFT, () -> replay.jumpKeyframe(-1));
+        particleCanvas.bindKey(KeyCode.RIGHT, () -> replay.jumpKeyframe(1));
+        particleCanvas.bindKey(KeyCode.COMMA, () -> replay.scrub(-ticksPerSecond));
+        particleCanvas.bindKey(KeyCode.PERIOD, () -> replay.scrub(ticksPerSecond));
+    }
+
+    @Override
+    public void stop() {
+        if (simulation != null) {
+            simulation.stop();
+        }
+        metrics.unregister();
+        if (replay != null) {
+            try {
+                replay.close();
+            } catch (IOException e) {
+                System.err.println("Could not close replay: " + e.getMessage());
+            }
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+                System.out.printf("Recorded %d frames (%d dropped)%n", recorder.getRecorded(), recorder.getDropped());
+            } catch (IOException e) {
+                System.err.println("Recording failed: " + e.getMessage());
+            }
+        }
+    }
+
     public static void main(String[] args) {
         launch();
     }
@@ -0,0 +1,208 @@
+package com.physics.particlesimulator;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+// Draws the particles of a SpatialIndex onto a canvas, one color per particle type.
+// Only cells that intersect the camera viewport are visited. Zoomed in, visible particles
+// are bucketed by type so the fill changes at most once per type. Zoomed out, when a
+// particle is smaller than a pixel and many share one, they are drawn as a density heatmap
+// instead: one pass over the index counts the particles and sums their type colors per
+// HEATMAP_TILE square of pixels, and each tile becomes one pixel of an image that is
+// scaled up with a single drawImage. Per particle that is a few array increments and no
+// draw calls; the rest of the cost depends only on the screen size.
+public class ParticleRenderer {
+    // On-screen particle size below which the heatmap replaces individual particles
+    public static final double HEATMAP_SIZE = 1.0;
+    // Side of a heatmap tile in screen pixels
+    public static final int HEATMAP_TILE = 2;
+    // Particles per tile at which a tile reaches full brightness
+    private static final int HEATMAP_SATURATION = 32;
+
+    private final Color[] colors;
+    private final byte[][] colorBytes; // premultiplied BGRA, the image's native layout
+
+    // Visible particles grouped by type: type t occupies typeStart[t] .. typeStart[t + 1]
+    private final int[] typeStart;
+    private double[] batchX = new double[0];
+    private double[] batchY = new double[0];
+
+    // Heatmap tiles, interleaved so a particle touches one place: particle count and the
+    // summed blue, green and red of their type colors
+    private int[] tiles = new int[0];
+    // Brightness by particle count, from dim for a lone particle to full at saturation
+    private final double[] brightness = new double[HEATMAP_SATURATION + 1];
+    private WritableImage image;
+    private byte[] pixels;
+
+    public ParticleRenderer(int numTypes) {
+        colors = new Color[numTypes];
+        colorBytes = new byte[numTypes][];
+        typeStart = new int[numTypes + 1];
+        for (int type = 0; type < numTypes; type++) {
+            colors[type] = Color.hsb(360.0 * type / numTypes, 1.0, 1.0); // colorful by type
+            Color color = colors[type];
+            colorBytes[type] = new byte[] {
+                    (byte) Math.round(color.getBlue() * 255),
+                    (byte) Math.round(color.getGreen() * 255),
+                    (byte) Math.round(color.getRed() * 255),
+                    (byte) 255
+            };
+        }
+        for (int count = 1; count <= HEATMAP_SATURATION; count++) {
+            brightness[count] = 0.35 + 0.65 * Math.log(count) / Math.log(HEATMAP_SATURATION);
+        }
+    }
+
+    public Color colorOf(int type) {
+        return colors[type];
+    }
+
+    public void draw(GraphicsContext graphicsContext, Camera2D camera, SpatialIndex index) {
+        double screenWidth = graphicsContext.getCanvas().getWidth();
+        double screenHeight = graphicsContext.getCanvas().getHeight();
+        double size = Particle.RADIUS * camera.zoom;
+
+        // Cells under the viewport; particles are drawn from their top-left corner, so
+        // include the cells just left of and above the view
+        double worldLeft = camera.screenToWorldX(0) - Particle.RADIUS;
+        double worldTop = camera.screenToWorldY(0) - Particle.RADIUS;
+        int colStart = Math.max(0, (int) Math.floor(worldLeft / index.cellWidth));
+        int colEnd = Math.min(index.gridWidth - 1, (int) Math.floor(camera.screenToWorldX(screenWidth) / index.cellWidth));
+        int rowStart = Math.max(0, (int) Math.floor(worldTop / index.cellHeight));
+        int rowEnd = Math.min(index.gridHeight - 1, (int) Math.floor(camera.screenToWorldY(screenHeight) / index.cellHeight));
+        if (colStart > colEnd || rowStart > rowEnd) return;
+
+        if (size < HEATMAP_SIZE) {
+            drawHeatmap(graphicsContext, camera, index, colStart, colEnd, rowStart, rowEnd);
+        } else {
+            drawBatched(graphicsContext, camera, index, colStart, colEnd, rowStart, rowEnd, size);
+        }
+    }
+
+    private void drawBatched(GraphicsContext graphicsContext, Camera2D camera, SpatialIndex index,
+                             int colStart, int colEnd, int rowStart, int rowEnd, double size) {
+        int[] cellStart = index.cellStart;
+        int[] type = index.type;
+        int numTypes = colors.length;
+
+        // Counting sort of the visible particles by type. The cells of a row between colStart
+        // and colEnd are one contiguous range of the index.
+        Arrays.fill(typeStart, 0);
+        for (int row = rowStart; row <= rowEnd; row++) {
+            int end = cellStart[row * index.gridWidth + colEnd + 1];
+            for (int k = cellStart[row * index.gridWidth + colStart]; k < end; k++) {
+                typeStart[type[k] + 1]++;
+            }
+        }
+        for (int t = 0; t < numTypes; t++) {
+            typeStart[t + 1] += typeStart[t];
+        }
+        int visible = typeStart[numTypes];
+        if (batchX.length < visible) {
+            batchX = new double[index.size()];
+            batchY = new double[index.size()];
+        }
+
+        for (int row = rowStart; row <= rowEnd; row++) {
+            int end = cellStart[row * index.gridWidth + colEnd + 1];
+            for (int k = cellStart[row * index.gridWidth + colStart]; k < end; k++) {
+                int slot = typeStart[type[k]]++;
+                batchX[slot] = camera.worldToScreenX(index.x[k]);
+                batchY[slot] = camera.worldToScreenY(index.y[k]);
+            }
+        }
+
+        // typeStart[t] now holds the end of type t, which is the start of type t + 1
+        int start = 0;
+        for (int t = 0; t < numTypes; t++) {
+            int end = typeStart[t];
+            if (end > start) {
+                graphicsContext.setFill(colors[t]);
+                for (int i = start; i < end; i++) {
+                    graphicsContext.fillOval(batchX[i], batchY[i], size, size);
+                }
+            }
+            start = end;
+        }
+    }
+
+    private void drawHeatmap(GraphicsContext graphicsContext, Camera2D camera, SpatialIndex index,
+                             int colStart, int colEnd, int rowStart, int rowEnd) {
+        int screenWidth = (int) graphicsContext.getCanvas().getWidth();
+        int screenHeight = (int) graphicsContext.getCanvas().getHeight();
+        int tilesWide = (screenWidth + HEATMAP_TILE - 1) / HEATMAP_TILE;
+        int tilesHigh = (screenHeight + HEATMAP_TILE - 1) / HEATMAP_TILE;
+        if (image == null || (int) image.getWidth() != tilesWide || (int) image.getHeight() != tilesHigh) {
+            image = new WritableImage(tilesWide, tilesHigh);
+            pixels = new byte[tilesWide * tilesHigh * 4];
+            tiles = new int[tilesWide * tilesHigh * 4];
+        }
+
+        // Only the tiles covered by the world are cleared and uploaded
+        int left = Math.max(0, (int) Math.floor(camera.worldToScreenX(0)));
+        int top = Math.max(0, (int) Math.floor(camera.worldToScreenY(0)));
+        int right = Math.min(screenWidth, (int) Math.ceil(camera.worldToScreenX(index.width)) + 1);
+        int bottom = Math.min(screenHeight, (int) Math.ceil(camera.worldToScreenY(index.height)) + 1);
+        if (left >= right || top >= bottom) return;
+        int tileLeft = left / HEATMAP_TILE;
+        int tileTop = top / HEATMAP_TILE;
+        int tileRight = (right + HEATMAP_TILE - 1) / HEATMAP_TILE;
+        int tileBottom = (bottom + HEATMAP_TILE - 1) / HEATMAP_TILE;
+        for (int ty = tileTop; ty < tileBottom; ty++) {
+            Arrays.fill(tiles, (ty * tilesWide + tileLeft) * 4, (ty * tilesWide + tileRight) * 4, 0);
+        }
+
+        int[] cellStart = index.cellStart;
+        int[] type = index.type;
+        for (int row = rowStart; row <= rowEnd; row++) {
+            int end = cellStart[row * index.gridWidth + colEnd + 1];
+            for (int k = cellStart[row * index.gridWidth + colStart]; k < end; k++) {
+                int px = (int) camera.worldToScreenX(index.x[k]);
+                int py = (int) camera.worldToScreenY(index.y[k]);
+                if (px < left || px >= right || py < top || py >= bottom) continue;
+                int tile = (py / HEATMAP_TILE * tilesWide + px / HEATMAP_TILE) * 4;
+                byte[] color = colorBytes[type[k]];
+                tiles[tile]++;
+                tiles[tile + 1] += color[0] & 0xFF;
+                tiles[tile + 2] += color[1] & 0xFF;
+                tiles[tile + 3] += color[2] & 0xFF;
+            }
+        }
+
+        // Each tile shows the mean color of its particles, brighter the more there are
+        int scanline = tilesWide * 4;
+        for (int ty = tileTop; ty < tileBottom; ty++) {
+            for (int tx = tileLeft; tx < tileRight; tx++) {
+                int offset = (ty * tilesWide + tx) * 4;
+                int count = tiles[offset];
+                if (count == 0) {
+                    pixels[offset] = 0;
+                    pixels[offset + 1] = 0;
+                    pixels[offset + 2] = 0;
+                    pixels[offset + 3] = 0;
+                    continue;
+                }
+                double scale = brightness[Math.min(count, HEATMAP_SATURATION)] / count;
+                pixels[offset] = (byte) (tiles[offset + 1] * scale);
+                pixels[offset + 1] = (byte) (tiles[offset + 2] * scale);
+                pixels[offset + 2] = (byte) (tiles[offset + 3] * scale);
+                pixels[offset + 3] = (byte) 255;
+            }
+        }
+
+        int tilesAcross = tileRight - tileLeft;
+        int tilesDown = tileBottom - tileTop;
+        image.getPixelWriter().setPixels(tileLeft, tileTop, tilesAcross, tilesDown, PixelFormat.getByteBgraPreInstance(),
+                pixels, tileTop * scanline + tileLeft * 4, scanline);
+        boolean smoothing = graphicsContext.isImageSmoothing();
+        graphicsContext.setImageSmoothing(false); // keep tiles sharp-edged
+        graphicsContext.drawImage(image, tileLeft, tileTop, tilesAcross, tilesDown,
+                tileLeft * HEATMAP_TILE, tileTop * HEATMAP_TILE, tilesAcross * HEATMAP_TILE, tilesDown * HEATMAP_TILE);
+        graphicsContext.setImageSmoothing(smoothing);
+    }
+}
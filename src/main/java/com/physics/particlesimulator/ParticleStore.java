@@ -0,0 +1,237 @@
+package com.physics.particlesimulator;
+
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+// Structure-of-arrays particle storage. Particle i lives at index i of every array,
+// so the physics loop walks flat primitive memory instead of Particle/Vector2D objects.
+// Positions and velocities are double buffered: a step reads x/y/vx/vy and writes
+// nextX/nextY/nextVx/nextVy, then swapBuffers() makes the written state current.
+// Particles spawned or despawned at runtime are queued and applied together by
+// applyQueued(), which the engine calls between the buffer swap and the index rebuild, so
+// a step never sees a half-edited store and edits cost no extra rebuild. Freed slots are
+// reused by new particles first; the rest are filled from the end, keeping 0 .. size
+// dense for the kernels. Store indices other than the reused and moved ones stay valid.
+public class ParticleStore {
+    public double[] x;
+    public double[] y;
+    public double[] vx;
+    public double[] vy;
+    public int[] type;
+    public double[] nextX;
+    public double[] nextY;
+    public double[] nextVx;
+    public double[] nextVy;
+    private int size = 0;
+    private long generation = 0;
+
+    // Edits queued for the next applyQueued(): new particles and store indices to remove
+    private double[] queuedX = new double[0];
+    private double[] queuedY = new double[0];
+    private double[] queuedVx = new double[0];
+    private double[] queuedVy = new double[0];
+    private int[] queuedType = new int[0];
+    private int queuedAdds = 0;
+    private int[] queuedRemovals = new int[0];
+    private int queuedRemovalCount = 0;
+
+    public ParticleStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        type = new int[capacity];
+        nextX = new double[capacity];
+        nextY = new double[capacity];
+        nextVx = new double[capacity];
+        nextVy = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return x.length;
+    }
+
+    public int add(double px, double py, double pvx, double pvy, int ptype) {
+        if (size == x.length) {
+            grow(size * 2);
+        }
+        int i = size++;
+        generation++;
+        x[i] = px;
+        y[i] = py;
+        vx[i] = pvx;
+        vy[i] = pvy;
+        type[i] = ptype;
+        return i;
+    }
+
+    public void clear() {
+        size = 0;
+        queuedAdds = 0;
+        queuedRemovalCount = 0;
+        generation++;
+    }
+
+    // Changes whenever particles are added, removed or moved to other slots, so holders of
+    // store indices, like neighbor lists, know to rebuild
+    public long generation() {
+        return generation;
+    }
+
+    // Grows the arrays to hold at least capacity particles, ahead of the steps that need them
+    public void reserve(int capacity) {
+        if (capacity > x.length) {
+            grow(capacity);
+        }
+    }
+
+    // Queues a particle to be added by the next applyQueued(). Capacity for it is made
+    // here rather than while applying, so a step never reallocates the store.
+    public void queueAdd(double px, double py, double pvx, double pvy, int ptype) {
+        if (queuedAdds == queuedType.length) {
+            int capacity = Math.max(16, queuedAdds * 2);
+            queuedX = Arrays.copyOf(queuedX, capacity);
+            queuedY = Arrays.copyOf(queuedY, capacity);
+            queuedVx = Arrays.copyOf(queuedVx, capacity);
+            queuedVy = Arrays.copyOf(queuedVy, capacity);
+            queuedType = Arrays.copyOf(queuedType, capacity);
+        }
+        queuedX[queuedAdds] = px;
+        queuedY[queuedAdds] = py;
+        queuedVx[queuedAdds] = pvx;
+        queuedVy[queuedAdds] = pvy;
+        queuedType[queuedAdds] = ptype;
+        queuedAdds++;
+        if (size + queuedAdds > x.length) {
+            grow(Math.max(size + queuedAdds, x.length * 2));
+        }
+    }
+
+    // Queues particle i for removal by the next applyQueued(); queuing it twice removes it once
+    public void queueRemove(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("No particle " + i + " in a store of " + size);
+        }
+        if (queuedRemovalCount == queuedRemovals.length) {
+            queuedRemovals = Arrays.copyOf(queuedRemovals, Math.max(16, queuedRemovalCount * 2));
+        }
+        queuedRemovals[queuedRemovalCount++] = i;
+    }
+
+    public int queuedAdds() {
+        return queuedAdds;
+    }
+
+    public int queuedRemovals() {
+        return queuedRemovalCount;
+    }
+
+    // Applies the queued edits to the current state and returns whether there were any.
+    // Removed slots are taken by new particles in ascending order; slots still free after
+    // that are filled with particles from the end, highest slot first. The order depends
+    // only on the queued edits, so runs stay reproducible.
+    public boolean applyQueued() {
+        if (queuedAdds == 0 && queuedRemovalCount == 0) return false;
+        int[] removals = queuedRemovals;
+        Arrays.sort(removals, 0, queuedRemovalCount);
+        int free = 0;
+        for (int r = 0; r < queuedRemovalCount; r++) {
+            if (r == 0 || removals[r] != removals[r - 1]) removals[free++] = removals[r];
+        }
+
+        int reused = Math.min(free, queuedAdds);
+        for (int q = 0; q < reused; q++) {
+            setQueued(removals[q], q);
+        }
+        for (int r = free - 1; r >= reused; r--) {
+            int last = --size;
+            if (removals[r] != last) move(last, removals[r]);
+        }
+        for (int q = reused; q < queuedAdds; q++) {
+            setQueued(size++, q);
+        }
+        queuedAdds = 0;
+        queuedRemovalCount = 0;
+        generation++;
+        return true;
+    }
+
+    private void setQueued(int i, int q) {
+        x[i] = queuedX[q];
+        y[i] = queuedY[q];
+        vx[i] = queuedVx[q];
+        vy[i] = queuedVy[q];
+        type[i] = queuedType[q];
+    }
+
+    private void move(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        type[to] = type[from];
+    }
+
+    // Sets the particle count directly, for bulk loaders that fill the arrays themselves.
+    // Grows the arrays when needed; particles past the old size are left as they are.
+    public void resize(int newSize) {
+        if (newSize > x.length) {
+            grow(newSize);
+        }
+        size = newSize;
+        generation++;
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        type = Arrays.copyOf(type, capacity);
+        nextX = new double[capacity];
+        nextY = new double[capacity];
+        nextVx = new double[capacity];
+        nextVy = new double[capacity];
+    }
+
+    public void swapBuffers() {
+        double[] swap = x;
+        x = nextX;
+        nextX = swap;
+        swap = y;
+        y = nextY;
+        nextY = swap;
+        swap = vx;
+        vx = nextVx;
+        nextVx = swap;
+        swap = vy;
+        vy = nextVy;
+        nextVy = swap;
+    }
+
+    // Hash over the exact bits of every particle's state. Two runs from the same seed must
+    // produce the same hash after the same number of steps.
+    public long stateHash() {
+        long hash = size;
+        for (int i = 0; i < size; i++) {
+            hash = hash * 31 + Double.doubleToLongBits(x[i]);
+            hash = hash * 31 + Double.doubleToLongBits(y[i]);
+            hash = hash * 31 + Double.doubleToLongBits(vx[i]);
+            hash = hash * 31 + Double.doubleToLongBits(vy[i]);
+            hash = hash * 31 + type[i];
+        }
+        return hash;
+    }
+
+    // Object view of a single particle for UI code. The returned Particle is a copy;
+    // changing it does not write back into the store.
+    public Particle view(int i, Color color) {
+        return new Particle(new Vector2D(x[i], y[i]), new Vector2D(vx[i], vy[i]), type[i], color);
+    }
+}
@@ -1,160 +1,1104 @@
 package com.physics.particlesimulator;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+// Steps one simulation: pair forces, integration and the index rebuild. An engine holds
+// the interaction parameters and all per-step scratch state, so independent engines can
+// step different worlds at the same time, also on one shared pool.
 public class PhysicsEngine {
-    public static double[][] forces;
-    public static double[][] minDistance;
-    public static double[][] radii;
-
-    public static void setParameters(int numTypes) {
-        forces = new double[numTypes][numTypes];
-        minDistance = new double[numTypes][numTypes];
-        radii = new double[numTypes][numTypes];
-
-        for (int i = 0; i < numTypes; i++) {
-            for (int j = 0; j < numTypes; j++) {
-                forces[i][j] = Vector2D.random(0.3,1.0);
-                if (Vector2D.random(100) < 50) {
-                    forces[i][j] *= -1;
+    public static final double K = 0.05; // Scaling factor for forces
+    public static final double FRICTION = 0.85; // Friction coefficient
+
+    // Current interaction parameters. A step reads this once, so replacing it from another
+    // thread takes effect at the next step and never mixes two tables within one.
+    private volatile InteractionTable table;
+
+    // Neighbor cell offsets whose cells can hold a particle within the cutoff of a particle in
+    // the home cell. Cells may be smaller than the cutoff, so this is the (2r+1)^2 square with
+    // the out-of-range corners pruned. The half stencil is the subset with dRow > 0, or
+    // dRow == 0 and dCol >= 0, which sees each pair of cells once.
+    private int[] stencilRow = new int[0];
+    private int[] stencilCol = new int[0];
+    private int[] halfStencilRow = new int[0];
+    private int[] halfStencilCol = new int[0];
+    // The stencil as one column span per row offset, for kernels that walk a row of
+    // neighbor cells as one contiguous range of the index
+    private int[] spanRow = new int[0];
+    private int[] spanColStart = new int[0];
+    private int[] spanColEnd = new int[0];
+    private int stencilRadiusX;
+    private int stencilRadiusY;
+    private double stencilCellWidth;
+    private double stencilCellHeight;
+    private double stencilCutoff;
+
+    // Cell size is re-chosen whenever the cutoff changes, e.g. after setParameters
+    private boolean autoCellSize = true;
+    private double tunedCutoff;
+    private static final double CELL_VISIT_COST = 1.5; // cost of visiting one cell, in pair checks
+
+    // Parallel step: the work is split into tiles that run on the pool. Every particle reads
+    // only the previous state and writes only its own next state, so the result is
+    // identical for any number of threads and any split.
+    // Clustered worlds put most of the work into a few cells, so tiles are cut by measured
+    // cost rather than by row count: every step, each cell's cost is its particle count
+    // times the particles in its stencil cells, and tiles cover equal shares of the running
+    // sum costPrefix. Gather tiles are ranges of sorted particles, which can split even a
+    // single dense cell. There are TILES_PER_THREAD tiles per thread, so the pool's work
+    // stealing evens out what the cost model misses, like the share of candidates that are
+    // actually within the cutoff.
+    private static final int TILES_PER_THREAD = 4;
+    private ForkJoinPool pool;
+    private boolean ownsPool = false;
+    private int threads = 1;
+    private Tile[] tiles = new Tile[0];
+    private int tileCount = 0;
+    private final StepTask stepTask = new StepTask();
+    private long[] costPrefix = new long[1];
+
+    // Symmetric mode visits each unordered pair once through a half stencil and adds the
+    // two type-specific forces to both particles. A home row writes forces into rows
+    // row .. row + cellRadiusY, so rows are processed in phases of rows that are more than
+    // cellRadiusY apart. The phase order is fixed, which keeps the summation order, and so
+    // the result, independent of the thread count.
+    private boolean symmetric = false;
+    private double[] forceX = new double[0];
+    private double[] forceY = new double[0];
+
+    // Float mode computes pair forces in float with FloatKernel, vectorized when the
+    // jdk.incubator.vector module is available. It always uses the full stencil; positions,
+    // velocities and integration stay double.
+    private boolean floatPrecision = false;
+    private FloatKernel floatKernel;
+
+    // Barnes-Hut mode replaces the cell stencil with a quadtree, for interaction radii near
+    // world scale where the stencil would cover most of the grid. null uses the cells.
+    // It takes precedence over symmetric and float mode.
+    private BarnesHut barnesHut;
+    private final int[] treeStack = new int[BarnesHut.stackSize()]; // the caller's; tiles have their own
+
+    // List mode keeps Verlet neighbor lists within the cutoff plus a skin and rebuilds them
+    // only once a particle has moved half the skin, instead of searching the stencil cells
+    // every step; the stencil then reaches cutoff + skin. null searches every step. Used
+    // unless Barnes-Hut mode is on, and takes precedence over symmetric and float mode.
+    private NeighborList neighborList;
+
+    private static final int GATHER = 0;
+    private static final int PAIRS = 1;
+    private static final int INTEGRATE = 2;
+    private static final int GATHER_FLOAT = 3;
+    private static final int TREE = 4;
+    private static final int LIST_BUILD = 5;
+    private static final int LIST = 6;
+
+    // Simulated time per step. The forces act for dt and friction decays velocities by
+    // FRICTION per unit of time, so dt = 1 is the original unscaled step and smaller steps
+    // integrate the same motion more finely.
+    private double timeStep = 1;
+    private double stepFriction = FRICTION;
+
+    // Index that the last step left behind the particles, see updateAll(particles, index, false)
+    private SpatialIndex staleIndex;
+
+    // Pairs within the cutoff in the last step: ordered pairs with the full stencil,
+    // unordered pairs in symmetric mode
+    private long pairCount;
+    private final StepMetrics metrics = new StepMetrics();
+
+    // State of the step in progress, shared with the tiles
+    private ParticleStore stepParticles;
+    private SpatialIndex stepIndex;
+    private InteractionTable stepTable;
+
+    public PhysicsEngine(InteractionTable table) {
+        this.table = table;
+    }
+
+    public void setParameters(int numTypes) {
+        setParameters(numTypes, Vector2D.currentRandom());
+    }
+
+    // Draws new interaction parameters from the given generator, so a seed reproduces them
+    public void setParameters(int numTypes, SplittableRandom random) {
+        setTable(InteractionTable.random(numTypes, random));
+    }
+
+    // Installs given parameters, e.g. from a checkpoint
+    public void setParameters(double[][] forces, double[][] minDistance, double[][] radii) {
+        setTable(InteractionTable.of(forces, minDistance, radii));
+    }
+
+    // Safe to call from any thread; a step in progress finishes with the previous table
+    public void setTable(InteractionTable table) {
+        this.table = table;
+    }
+
+    public InteractionTable getTable() {
+        return table;
+    }
+
+    public double getCutoff() {
+        return table.cutoff;
+    }
+
+    // When enabled (the default) updateAll re-sizes the index cells whenever the cutoff changes
+    public void setAutoCellSize(boolean autoCellSize) {
+        this.autoCellSize = autoCellSize;
+        tunedCutoff = 0;
+    }
+
+    // Picks the cell size that minimizes the expected work per particle: the candidates
+    // inside the stencil cells plus a fixed cost per cell visited. Cells of cutoff / k for
+    // k = 1..4 are compared, each with its corner-pruned stencil.
+    public double bestCellSize(double width, double height, int particleCount) {
+        return bestCellSize(width, height, particleCount, table.cutoff);
+    }
+
+    private double bestCellSize(double width, double height, int particleCount, double cutoff) {
+        double density = particleCount / (width * height);
+        double bestSize = cutoff;
+        double bestCost = Double.MAX_VALUE;
+        for (int k = 1; k <= 4; k++) {
+            double size = cutoff / k;
+            int gridWidth = Math.max(1, (int)(width / size));
+            int gridHeight = Math.max(1, (int)(height / size));
+            double cellWidth = width / gridWidth;
+            double cellHeight = height / gridHeight;
+            int radiusX = (int)Math.ceil(cutoff / cellWidth);
+            int radiusY = (int)Math.ceil(cutoff / cellHeight);
+            // Offsets must not wrap onto each other, or pairs would be counted twice
+            if (k > 1 && (gridWidth <= 2 * radiusX || gridHeight <= 2 * radiusY)) break;
+
+            int cells = countStencil(cellWidth, cellHeight, cutoff, radiusX, radiusY);
+            double cost = cells * (cellWidth * cellHeight * density + CELL_VISIT_COST);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestSize = size;
+            }
+        }
+        return bestSize;
+    }
+
+    private static boolean inStencil(int dRow, int dCol, double cellWidth, double cellHeight, double cutoff) {
+        // Closest possible distance between a point in the home cell and one in the offset cell
+        double gapX = Math.max(0, Math.abs(dCol) - 1) * cellWidth;
+        double gapY = Math.max(0, Math.abs(dRow) - 1) * cellHeight;
+        return gapX * gapX + gapY * gapY < cutoff * cutoff;
+    }
+
+    private static int countStencil(double cellWidth, double cellHeight, double cutoff, int radiusX, int radiusY) {
+        int cells = 0;
+        for (int dRow = -radiusY; dRow <= radiusY; dRow++) {
+            for (int dCol = -radiusX; dCol <= radiusX; dCol++) {
+                if (inStencil(dRow, dCol, cellWidth, cellHeight, cutoff)) cells++;
+            }
+        }
+        return cells;
+    }
+
+    private void buildStencil(SpatialIndex index, double cutoff) {
+        double cellWidth = index.cellWidth;
+        double cellHeight = index.cellHeight;
+        int radiusX = (int)Math.ceil(cutoff / cellWidth);
+        int radiusY = (int)Math.ceil(cutoff / cellHeight);
+        int cells = countStencil(cellWidth, cellHeight, cutoff, radiusX, radiusY);
+        int[] stencilRow = new int[cells];
+        int[] stencilCol = new int[cells];
+        int[] halfStencilRow = new int[cells / 2 + 1];
+        int[] halfStencilCol = new int[cells / 2 + 1];
+        int[] spanRow = new int[2 * radiusY + 1];
+        int[] spanColStart = new int[2 * radiusY + 1];
+        int[] spanColEnd = new int[2 * radiusY + 1];
+
+        int full = 0;
+        int half = 0;
+        for (int dRow = -radiusY; dRow <= radiusY; dRow++) {
+            // Pruning removes the same number of columns from both ends of a row
+            int span = dRow + radiusY;
+            spanRow[span] = dRow;
+            spanColStart[span] = radiusX;
+            spanColEnd[span] = -radiusX;
+            for (int dCol = -radiusX; dCol <= radiusX; dCol++) {
+                if (!inStencil(dRow, dCol, cellWidth, cellHeight, cutoff)) continue;
+                spanColStart[span] = Math.min(spanColStart[span], dCol);
+                spanColEnd[span] = Math.max(spanColEnd[span], dCol);
+                stencilRow[full] = dRow;
+                stencilCol[full] = dCol;
+                full++;
+                if (dRow > 0 || (dRow == 0 && dCol >= 0)) {
+                    halfStencilRow[half] = dRow;
+                    halfStencilCol[half] = dCol;
+                    half++;
+                }
+            }
+        }
+
+        // On a grid only a few cells across, offsets wrap onto the same cell; the full stencil
+        // keeps one of each, the home cell as (0, 0), so a neighbor cell is never summed twice
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        if (gridWidth <= 2 * radiusX || gridHeight <= 2 * radiusY) {
+            boolean[] seen = new boolean[gridWidth * gridHeight];
+            seen[0] = true;
+            int unique = 0;
+            for (int s = 0; s < full; s++) {
+                int cell = Math.floorMod(stencilRow[s], gridHeight) * gridWidth + Math.floorMod(stencilCol[s], gridWidth);
+                boolean home = stencilRow[s] == 0 && stencilCol[s] == 0;
+                if (seen[cell] && !home) continue;
+                seen[cell] = true;
+                stencilRow[unique] = stencilRow[s];
+                stencilCol[unique] = stencilCol[s];
+                unique++;
+            }
+            stencilRow = Arrays.copyOf(stencilRow, unique);
+            stencilCol = Arrays.copyOf(stencilCol, unique);
+        }
+
+        this.stencilRow = stencilRow;
+        this.stencilCol = stencilCol;
+        this.halfStencilRow = halfStencilRow;
+        this.halfStencilCol = halfStencilCol;
+        this.spanRow = spanRow;
+        this.spanColStart = spanColStart;
+        this.spanColEnd = spanColEnd;
+        stencilRadiusX = radiusX;
+        stencilRadiusY = radiusY;
+        stencilCellWidth = cellWidth;
+        stencilCellHeight = cellHeight;
+        stencilCutoff = cutoff;
+    }
+
+    // Runs steps on a new pool with the given number of worker threads; 1 steps on the caller.
+    // The engine shuts that pool down when it is replaced.
+    public void setThreads(int threads) {
+        setPool(threads > 1 ? new ForkJoinPool(threads) : null);
+        ownsPool = pool != null;
+    }
+
+    // Runs steps on an existing pool, e.g. one shared with other engines. null steps on the
+    // caller. A shared pool is never shut down by the engine.
+    public void setPool(ForkJoinPool pool) {
+        if (ownsPool && this.pool != pool) {
+            this.pool.shutdown();
+        }
+        ownsPool = false;
+        this.pool = pool;
+        this.threads = pool != null ? pool.getParallelism() : 1;
+        this.tiles = new Tile[threads * TILES_PER_THREAD];
+        for (int i = 0; i < tiles.length; i++) tiles[i] = new Tile();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    // Timings and counters of the last step; overwritten by the next one
+    public StepMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getPairCount() {
+        return pairCount;
+    }
+
+    public void setSymmetric(boolean symmetric) {
+        this.symmetric = symmetric;
+    }
+
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    public void setFloatPrecision(boolean floatPrecision) {
+        if (floatPrecision && floatKernel == null) {
+            floatKernel = FloatKernel.create();
+        }
+        this.floatPrecision = floatPrecision;
+    }
+
+    // Float mode with the given kernel rather than the one FloatKernel.create() picks, e.g.
+    // to compare the scalar and the vector kernel
+    void setFloatKernel(FloatKernel floatKernel) {
+        this.floatKernel = floatKernel;
+        floatPrecision = true;
+    }
+
+    public boolean isFloatPrecision() {
+        return floatPrecision;
+    }
+
+    // Opening angle of Barnes-Hut mode: a quadtree node is approximated once its size over
+    // its distance falls below theta, so smaller is more exact and slower. 0 turns the mode
+    // off and goes back to the cell stencil.
+    public void setOpeningAngle(double theta) {
+        if (theta < 0) {
+            throw new IllegalArgumentException("Opening angle must not be negative: " + theta);
+        }
+        barnesHut = theta > 0 ? new BarnesHut(theta) : null;
+    }
+
+    public double getOpeningAngle() {
+        return barnesHut != null ? barnesHut.theta() : 0;
+    }
+
+    // Skin of list mode: lists reach this far beyond the cutoff, so a larger skin means
+    // longer lists that survive more steps. Depends on how fast particles move; 0 turns the
+    // mode off.
+    public void setNeighborSkin(double skin) {
+        if (skin < 0) {
+            throw new IllegalArgumentException("Neighbor skin must not be negative: " + skin);
+        }
+        neighborList = skin > 0 ? new NeighborList(skin) : null;
+    }
+
+    public double getNeighborSkin() {
+        return neighborList != null ? neighborList.skin() : 0;
+    }
+
+    // Times list mode has built its lists since the skin was set
+    public long getNeighborListBuilds() {
+        return neighborList != null ? neighborList.builds() : 0;
+    }
+
+    public void setTimeStep(double dt) {
+        if (!(dt > 0)) {
+            throw new IllegalArgumentException("Time step must be positive: " + dt);
+        }
+        timeStep = dt;
+        stepFriction = Math.pow(FRICTION, dt);
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    // Makes room for capacity particles in the per-step arrays of this engine and of the
+    // modes that have been turned on, so the step that adds queued particles does not grow
+    // them; World calls it when particles are queued for spawning. Neighbor lists and the
+    // quadtree grow by as much as the particle count, which covers them unless the new
+    // particles are far denser than the old ones.
+    public void reserve(int capacity) {
+        if (forceX.length < capacity) {
+            forceX = new double[capacity];
+            forceY = new double[capacity];
+        }
+        if (floatKernel != null) {
+            floatKernel.reserve(capacity);
+        }
+        if (barnesHut != null) {
+            barnesHut.reserve(capacity);
+        }
+        if (neighborList != null) {
+            // Tiles of a parallel build each collect about an equal share of the lists
+            int share = neighborList.reserve(capacity) / Math.max(1, tiles.length);
+            for (Tile tile : tiles) {
+                if (tile.buffer.length > 0 && tile.buffer.length < share) {
+                    tile.buffer = new int[share];
                 }
-                minDistance[i][j] = Vector2D.random(30, 50);
-                radii[i][j] = Vector2D.random(70, 250); // 70, 250 was the default but grid size matters
             }
         }
     }
 
-    public static void updateAll(ArrayList<Particle>[][] grid, double width, double height) {
-        double K = 0.05; // Scaling factor for forces
-        double friction = 0.85; // Friction coefficient
-        int gridHeight = grid.length;
-        int gridWidth = grid[0].length;
-        double gridSize = width / gridWidth;
+    // "vector Nx float" or "scalar"; null until float precision has been enabled
+    public String getFloatKernelName() {
+        return floatKernel != null ? floatKernel.name() : null;
+    }
+
+    // Advances every particle by one step. The index must have been built from the current
+    // state of the store; it is rebuilt from the new state before returning, so the caller
+    // can render from it and pass it straight into the next step. Particles queued in the
+    // store for spawning or despawning appear or vanish with the new state.
+    public void updateAll(ParticleStore particles, SpatialIndex index) {
+        updateAll(particles, index, true);
+    }
+
+    // Same, but with updateIndex false the index is only rebuilt when the next step needs
+    // it: list mode reads positions from its lists, so substeps between two frames can skip
+    // the rebuild. The next call rebuilds a skipped index first if its mode needs it; pass
+    // true on the last substep before the index is read.
+    public void updateAll(ParticleStore particles, SpatialIndex index, boolean updateIndex) {
+        InteractionTable table = this.table;
+        double cutoff = table.cutoff;
+        BarnesHut tree = barnesHut;
+        NeighborList list = tree == null ? neighborList : null;
+        // The cell search reaches cutoff + skin in list mode, so cells are tuned for that
+        double reach = list != null ? cutoff + list.skin() : cutoff;
+        if (autoCellSize && tunedCutoff != reach) {
+            index.setCellSize(bestCellSize(index.width, index.height, particles.size(), reach));
+            index.build(particles);
+            tunedCutoff = reach;
+            staleIndex = null;
+        }
+        // List mode reads its lists rather than the index, so it needs a current index only
+        // to rebuild them
+        boolean rebuildLists = list != null && list.load(particles, table, index);
+        if (staleIndex == index && (list == null || rebuildLists)) {
+            index.build(particles);
+            staleIndex = null;
+        }
+        if (stencilCutoff != reach || stencilCellWidth != index.cellWidth || stencilCellHeight != index.cellHeight) {
+            buildStencil(index, reach);
+        }
+        stepParticles = particles;
+        stepIndex = index;
+        stepTable = table;
+
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        // The half stencil and the spans need every neighbor offset to land on a distinct cell
+        boolean distinctCells = gridWidth > 2 * stencilRadiusX && gridHeight > 2 * stencilRadiusY;
+        if (((symmetric || floatPrecision) && distinctCells) || tree != null || list != null) {
+            int count = index.size();
+            if (forceX.length < count) {
+                forceX = new double[particles.capacity()];
+                forceY = new double[particles.capacity()];
+            }
+            Arrays.fill(forceX, 0, count, 0);
+            Arrays.fill(forceY, 0, count, 0);
+        }
+        long start = System.nanoTime();
+        // Tiles are split by count in tree mode and by list length in list mode
+        long candidates = tree == null && list == null ? measureCosts(index) : 0;
+        long forcesDone;
+        boolean unordered = false;
+        metrics.listBuilds = 0;
+        if (tree != null) {
+            tree.load(table);
+            tree.build(index);
+            pairCount = runSlots(TREE);
+            forcesDone = System.nanoTime();
+        } else if (list != null) {
+            if (rebuildLists) {
+                candidates = measureCosts(index);
+                buildLists(list, particles, index, table);
+                metrics.listBuilds = 1;
+            }
+            candidates += list.entries();
+            pairCount = runSlots(LIST);
+            forcesDone = System.nanoTime();
+        } else if (floatPrecision && distinctCells) {
+            floatKernel.load(table);
+            floatKernel.load(index);
+            pairCount = runSlots(GATHER_FLOAT);
+            forcesDone = System.nanoTime();
+        } else if (symmetric && distinctCells) {
+            int phases = stencilRadiusY + 1;
+            int phasedRows = gridHeight - gridHeight % phases;
+            long pairs = 0;
+            for (int phase = 0; phase < phases; phase++) {
+                pairs += runPhase(phase, phasedRows, phases);
+            }
+            // Rows left over when the grid height is not a multiple of the phase count
+            if (phasedRows < gridHeight) {
+                pairs += accumulatePairs(phasedRows, gridHeight, 1);
+            }
+            forcesDone = System.nanoTime();
+            runSlots(INTEGRATE);
+            pairCount = pairs;
+            unordered = true;
+        } else {
+            pairCount = runSlots(GATHER);
+            forcesDone = System.nanoTime();
+        }
+        long integrated = System.nanoTime();
+
+        stepParticles = null;
+        stepIndex = null;
+        stepTable = null;
+        metrics.candidatePairs = unordered ? candidates / 2 : candidates;
+        metrics.maxCellOccupancy = index.maxOccupancy();
+
+        long rebuildStart = System.nanoTime();
+        particles.swapBuffers();
+        particles.applyQueued(); // spawns and despawns queued since the last step
+        boolean rebuild = updateIndex || list == null;
+        if (rebuild) {
+            index.build(particles);
+        }
+        staleIndex = rebuild ? null : index;
+        long end = System.nanoTime();
 
-        // List to track particles that need to move to new cells
-        List<ParticleMove> particlesToMove = new ArrayList<>();
+        metrics.forceNanos = forcesDone - start;
+        metrics.integrateNanos = integrated - forcesDone;
+        metrics.integratedSteps = unordered ? 1 : 0;
+        metrics.indexNanos = end - rebuildStart;
+        metrics.pairs = pairCount;
+        metrics.migrated = rebuild ? index.migrated() : 0;
+    }
 
-        // Process each cell in the grid
+    // Fills costPrefix with the running sum of cell costs for this step and returns the
+    // ordered pairs of distinct particles that share a stencil, i.e. the distance checks of
+    // the full stencil. Walks the stencil spans, so it costs one range lookup per row offset
+    // and cell instead of a pass over the pairs. Spans only hold when every offset lands on a
+    // distinct cell; smaller grids walk the deduplicated stencil cell by cell instead.
+    private long measureCosts(SpatialIndex index) {
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        int[] cellStart = index.cellStart;
+        boolean distinctCells = gridWidth > 2 * stencilRadiusX && gridHeight > 2 * stencilRadiusY;
+        if (costPrefix.length != index.cellCount() + 1) {
+            costPrefix = new long[index.cellCount() + 1];
+        }
+        long[] costPrefix = this.costPrefix;
+        long candidates = 0;
         for (int row = 0; row < gridHeight; row++) {
             for (int col = 0; col < gridWidth; col++) {
-                ArrayList<Particle> currentCell = grid[row][col];
+                int homeCell = row * gridWidth + col;
+                int home = cellStart[homeCell + 1] - cellStart[homeCell];
+                costPrefix[homeCell + 1] = costPrefix[homeCell];
+                if (home == 0) continue;
+                long neighbors = 0;
+                if (!distinctCells) {
+                    for (int s = 0; s < stencilRow.length; s++) {
+                        int nRow = Math.floorMod(row + stencilRow[s], gridHeight);
+                        int nCol = Math.floorMod(col + stencilCol[s], gridWidth);
+                        int neighborCell = nRow * gridWidth + nCol;
+                        neighbors += cellStart[neighborCell + 1] - cellStart[neighborCell];
+                    }
+                }
+                for (int s = 0; distinctCells && s < spanRow.length; s++) {
+                    int rowBase = (row + spanRow[s] + gridHeight) % gridHeight * gridWidth;
+                    int colStart = col + spanColStart[s];
+                    int colEnd = col + spanColEnd[s];
+                    if (colStart < 0) {
+                        neighbors += cellStart[rowBase + gridWidth] - cellStart[rowBase + colStart + gridWidth];
+                        colStart = 0;
+                    }
+                    if (colEnd >= gridWidth) {
+                        neighbors += cellStart[rowBase + colEnd - gridWidth + 1] - cellStart[rowBase];
+                        colEnd = gridWidth - 1;
+                    }
+                    neighbors += cellStart[rowBase + colEnd + 1] - cellStart[rowBase + colStart];
+                }
+                candidates += home * neighbors;
+                costPrefix[homeCell + 1] += home * neighbors;
+            }
+        }
+        return candidates - index.size();
+    }
+
+    // First sorted particle after the given share of the step's total cost. Cost is spread
+    // evenly over the particles of a cell, since they all see the same stencil cells.
+    private int slotAtCost(long cost) {
+        int[] cellStart = stepIndex.cellStart;
+        long[] costPrefix = this.costPrefix;
+        // Last cell whose running cost does not exceed cost
+        int low = 0;
+        int high = costPrefix.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (costPrefix[mid] <= cost) low = mid;
+            else high = mid - 1;
+        }
+        int home = cellStart[low + 1] - cellStart[low];
+        long cellCost = costPrefix[low + 1] - costPrefix[low];
+        if (home == 0 || cellCost == 0) return cellStart[low];
+        long perParticle = cellCost / home;
+        return cellStart[low] + (int) Math.min(home, (cost - costPrefix[low] + perParticle - 1) / perParticle);
+    }
+
+    // Cell holding sorted particle slot, which must be below the particle count
+    private static int cellOfSlot(int[] cellStart, int cells, int slot) {
+        int low = 0;
+        int high = cells - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (cellStart[mid] <= slot) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
 
-                // Skip empty cells
-                if (currentCell.isEmpty()) continue;
+    // Gather step of sorted particles from .. to: each particle sums the forces of its
+    // stencil and integrates itself
+    private long gatherSlots(int from, int to) {
+        ParticleStore particles = stepParticles;
+        SpatialIndex index = stepIndex;
+        double width = index.width;
+        double height = index.height;
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        int[] stencilRow = this.stencilRow;
+        int[] stencilCol = this.stencilCol;
+        int[] cellStart = index.cellStart;
+        int[] particleIndex = index.particleIndex;
+        double[] x = index.x;
+        double[] y = index.y;
+        int[] type = index.type;
+        double[] params = stepTable.data;
+        int numTypes = stepTable.numTypes;
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        long pairs = 0;
 
-                // For each particle in the current cell
-                for (int i = 0; i < currentCell.size(); i++) {
-                    Particle a = currentCell.get(i);
-                    Vector2D totalForce = new Vector2D(0, 0);
-                    Vector2D acceleration = new Vector2D(0, 0);
+        // Process each cell of the tile, the first and last possibly in part
+        int homeCell = from < to ? cellOfSlot(cellStart, gridWidth * gridHeight, from) : 0;
+        for (int k = from; k < to; homeCell++) {
+            int row = homeCell / gridWidth;
+            int col = homeCell % gridWidth;
+            int homeEnd = Math.min(cellStart[homeCell + 1], to);
 
-                    // Check interactions with other particles in current cell
-                    for (int j = 0; j < currentCell.size(); j++) {
-                        if (i != j) {
-                            applyForces(a, currentCell.get(j), totalForce, width, height, K);
-                        }
+            // For each particle in the current cell
+            for (; k < homeEnd; k++) {
+                double ax = x[k];
+                double ay = y[k];
+                int paramsA = type[k] * numTypes * InteractionTable.STRIDE;
+                double fx = 0;
+                double fy = 0;
+
+// Check the home cell and neighboring cells of the stencil (with toroidal wrapping)
+                for (int s = 0; s < stencilRow.length; s++) {
+                    int dRow = stencilRow[s];
+                    int dCol = stencilCol[s];
+                    int nRow = Math.floorMod(row + dRow, gridHeight);
+                    int nCol = Math.floorMod(col + dCol, gridWidth);
+                    int neighborCell = nRow * gridWidth + nCol;
+                    for (int m = cellStart[neighborCell]; m < cellStart[neighborCell + 1]; m++) {
+                        double dx = x[m] - ax;
+                        double dy = y[m] - ay;
+
+                        // Handle wrapping around the world borders
+                        if (dx > halfWidth) dx -= width;
+                        else if (dx < -halfWidth) dx += width;
+                        if (dy > halfHeight) dy -= height;
+                        else if (dy < -halfHeight) dy += height;
+
+                        int p = paramsA + type[m] * InteractionTable.STRIDE;
+                        double distanceSquared = dx * dx + dy * dy;
+                        // Also skips m == k, whose distance is zero
+                        if (distanceSquared >= params[p + InteractionTable.CUTOFF_SQUARED] || distanceSquared == 0) continue;
+                        pairs++;
+
+                        double distance = Math.sqrt(distanceSquared);
+                        double scale = forceScale(distance, params[p + InteractionTable.REPULSION],
+                                params[p + InteractionTable.INVERSE_MIN_DISTANCE], params[p + InteractionTable.ATTRACTION],
+                                params[p + InteractionTable.INVERSE_RADIUS]) / distance;
+                        fx += dx * scale;
+                        fy += dy * scale;
                     }
+                }
 
-                    // Calculate cell radius based on maximum interaction distance
-                    int cellRadius = (int)Math.ceil(250.0 / gridSize); // 3 with grid size 100 and max radius 250
+                integrate(particles, particleIndex[k], ax, ay, fx, fy, width, height);
+            }
+        }
+        return pairs;
+    }
+
+    // Gather step of float mode: the forces on each particle are accumulated by the float
+    // kernel one stencil span at a time. A span whose columns wrap around the world is
+    // split into its two contiguous pieces.
+    private long gatherFloatSlots(int from, int to) {
+        ParticleStore particles = stepParticles;
+        SpatialIndex index = stepIndex;
+        FloatKernel kernel = floatKernel;
+        double width = index.width;
+        double height = index.height;
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        int[] spanRow = this.spanRow;
+        int[] spanColStart = this.spanColStart;
+        int[] spanColEnd = this.spanColEnd;
+        int[] cellStart = index.cellStart;
+        int[] particleIndex = index.particleIndex;
+        double[] x = index.x;
+        double[] y = index.y;
+        double[] forceX = this.forceX;
+        double[] forceY = this.forceY;
+        long pairs = 0;
+
+        int homeCell = from < to ? cellOfSlot(cellStart, gridWidth * gridHeight, from) : 0;
+        for (int k = from; k < to; homeCell++) {
+            int row = homeCell / gridWidth;
+            int col = homeCell % gridWidth;
+            int homeEnd = Math.min(cellStart[homeCell + 1], to);
+            for (; k < homeEnd; k++) {
+                for (int s = 0; s < spanRow.length; s++) {
+                    int rowBase = (row + spanRow[s] + gridHeight) % gridHeight * gridWidth;
+                    int colStart = col + spanColStart[s];
+                    int colEnd = col + spanColEnd[s];
+                    if (colStart < 0) {
+                        pairs += kernel.accumulate(k, cellStart[rowBase + colStart + gridWidth],
+                                cellStart[rowBase + gridWidth], forceX, forceY);
+                        colStart = 0;
+                    }
+                    if (colEnd >= gridWidth) {
+                        pairs += kernel.accumulate(k, cellStart[rowBase],
+                                cellStart[rowBase + colEnd - gridWidth + 1], forceX, forceY);
+                        colEnd = gridWidth - 1;
+                    }
+                    pairs += kernel.accumulate(k, cellStart[rowBase + colStart],
+                            cellStart[rowBase + colEnd + 1], forceX, forceY);
+                }
+                integrate(particles, particleIndex[k], x[k], y[k], forceX[k], forceY[k], width, height);
+            }
+        }
+        return pairs;
+    }
 
-// Check neighboring cells within calculated radius (with toroidal wrapping)
-                    for (int dRow = -cellRadius; dRow <= cellRadius; dRow++) {
-                        for (int dCol = -cellRadius; dCol <= cellRadius; dCol++) {
-                            int nRow = (row + dRow + gridHeight) % gridHeight;
-                            int nCol = (col + dCol + gridWidth) % gridWidth;
+    // Rebuilds the neighbor lists from the index in one pass. Each tile collects the lists
+    // of its slots into a buffer of its own, since their lengths are not known up front,
+    // and the buffers are copied into place in slot order afterwards.
+    private void buildLists(NeighborList list, ParticleStore particles, SpatialIndex index, InteractionTable table) {
+        list.begin(particles, index, table);
+        int count = index.size();
+        if (pool == null || tiles.length <= 1) {
+            list.setNeighbors(listSlots(0, count, list.neighbors()));
+            list.finish();
+            return;
+        }
+        long total = costPrefix[costPrefix.length - 1];
+        int from = 0;
+        tileCount = 0;
+        for (int i = 1; i <= tiles.length; i++) {
+            int to = i == tiles.length ? count : slotAtCost(total * i / tiles.length);
+            if (to > from) {
+                addTile(LIST_BUILD, from, to, 1);
+                from = to;
+            }
+        }
+        runTiles();
+        list.finish();
+        for (int i = 0; i < tileCount; i++) {
+            list.place(tiles[i].buffer, tiles[i].from, tiles[i].to);
+        }
+    }
 
-                            // Skip the current cell (already processed)
-                            if (nRow == row && nCol == col) continue;
+    // Collects the lists of sorted particles from .. to back to back into buffer, growing
+    // it as needed, and returns it. Visits the stencil cells in the gather kernel's order.
+    private int[] listSlots(int from, int to, int[] buffer) {
+        SpatialIndex index = stepIndex;
+        NeighborList list = neighborList;
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        int[] stencilRow = this.stencilRow;
+        int[] stencilCol = this.stencilCol;
+        int[] cellStart = index.cellStart;
 
-                            ArrayList<Particle> neighborCell = grid[nRow][nCol];
-                            for (Particle b : neighborCell) {
-                                applyForces(a, b, totalForce, width, height, K);
-                            }
-                        }
+        int at = 0;
+        int homeCell = from < to ? cellOfSlot(cellStart, gridWidth * gridHeight, from) : 0;
+        for (int k = from; k < to; homeCell++) {
+            int row = homeCell / gridWidth;
+            int col = homeCell % gridWidth;
+            int homeEnd = Math.min(cellStart[homeCell + 1], to);
+            for (; k < homeEnd; k++) {
+                int listStart = at;
+                for (int s = 0; s < stencilRow.length; s++) {
+                    int nRow = Math.floorMod(row + stencilRow[s], gridHeight);
+                    int nCol = Math.floorMod(col + stencilCol[s], gridWidth);
+                    int neighborCell = nRow * gridWidth + nCol;
+                    int start = cellStart[neighborCell];
+                    int end = cellStart[neighborCell + 1];
+                    if (at + end - start > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, at + end - start));
                     }
+                    at = list.collect(k, start, end, buffer, at);
+                }
+                list.setLength(k, at - listStart);
+            }
+        }
+        return buffer;
+    }
+
+    // List step of slots from .. to: forces from the neighbor lists, then integration
+    private long neighborListSlots(int from, int to) {
+        ParticleStore particles = stepParticles;
+        SpatialIndex index = stepIndex;
+        NeighborList list = neighborList;
+        int[] order = list.order;
+        double[] x = list.x;
+        double[] y = list.y;
+        double[] forceX = this.forceX;
+        double[] forceY = this.forceY;
+        long pairs = 0;
+        for (int s = from; s < to; s++) {
+            pairs += list.accumulate(s, forceX, forceY);
+            integrate(particles, order[s], x[s], y[s], forceX[s], forceY[s], index.width, index.height);
+        }
+        return pairs;
+    }
+
+    // Barnes-Hut step of sorted particles from .. to: forces from the quadtree, then
+    // integration. stack is the traversal stack of the thread running it.
+    private long treeSlots(int from, int to, int[] stack) {
+        ParticleStore particles = stepParticles;
+        SpatialIndex index = stepIndex;
+        BarnesHut tree = barnesHut;
+        int[] particleIndex = index.particleIndex;
+        double[] x = index.x;
+        double[] y = index.y;
+        int[] type = index.type;
+        double[] forceX = this.forceX;
+        double[] forceY = this.forceY;
+        long pairs = 0;
+        for (int k = from; k < to; k++) {
+            pairs += tree.accumulate(k, x[k], y[k], type[k], stack, forceX, forceY);
+            integrate(particles, particleIndex[k], x[k], y[k], forceX[k], forceY[k], index.width, index.height);
+        }
+        return pairs;
+    }
+
+    private long accumulatePairs(int rowStart, int rowEnd, int rowStride) {
+        SpatialIndex index = stepIndex;
+        double width = index.width;
+        double height = index.height;
+        int gridWidth = index.gridWidth;
+        int gridHeight = index.gridHeight;
+        int[] halfStencilRow = this.halfStencilRow;
+        int[] halfStencilCol = this.halfStencilCol;
+        int halfStencilSize = halfStencilRow.length;
+        int[] cellStart = index.cellStart;
+        double[] x = index.x;
+        double[] y = index.y;
+        int[] type = index.type;
+        double[] forceX = this.forceX;
+        double[] forceY = this.forceY;
+        double[] params = stepTable.data;
+        int numTypes = stepTable.numTypes;
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        long pairs = 0;
 
+        for (int row = rowStart; row < rowEnd; row += rowStride) {
+            for (int col = 0; col < gridWidth; col++) {
+                int homeCell = row * gridWidth + col;
+                int homeStart = cellStart[homeCell];
+                int homeEnd = cellStart[homeCell + 1];
+                if (homeStart == homeEnd) continue;
+
+                // Forward half of the neighborhood: the home cell itself, the rest of the home
+                // row to the right, and the rows below
+                for (int s = 0; s < halfStencilSize; s++) {
+                    int nRow = (row + halfStencilRow[s]) % gridHeight;
+                    int nCol = (col + halfStencilCol[s] + gridWidth) % gridWidth;
+                    int neighborCell = nRow * gridWidth + nCol;
+                    int neighborEnd = cellStart[neighborCell + 1];
 
-                    // Update particle velocity and position
-                    acceleration.add(totalForce);
-                    a.velocity.add(acceleration);
-                    a.position.add(a.velocity);
+                    for (int k = homeStart; k < homeEnd; k++) {
+                        double ax = x[k];
+                        double ay = y[k];
+                        int typeA = type[k];
+                        int paramsA = typeA * numTypes * InteractionTable.STRIDE;
+                        double fx = 0;
+                        double fy = 0;
 
-                    // Handle wrapping around world borders
-                    a.position.x = (a.position.x + width) % width;
-                    a.position.y = (a.position.y + height) % height;
-                    a.velocity.scale(friction);
+                        // Within the home cell only pairs with m > k, so each is seen once
+                        int m = neighborCell == homeCell ? k + 1 : cellStart[neighborCell];
+                        for (; m < neighborEnd; m++) {
+                            double dx = x[m] - ax;
+                            double dy = y[m] - ay;
 
-                    // Check if particle moved to a different cell
-                    int newRow = (int)(a.position.y / gridSize);
-                    int newCol = (int)(a.position.x / gridSize);
+                            // Handle wrapping around the world borders
+                            if (dx > halfWidth) dx -= width;
+                            else if (dx < -halfWidth) dx += width;
+                            if (dy > halfHeight) dy -= height;
+                            else if (dy < -halfHeight) dy += height;
 
-                    // Ensure new coordinates are within bounds
-                    newRow = Math.min(Math.max(newRow, 0), gridHeight - 1);
-                    newCol = Math.min(Math.max(newCol, 0), gridWidth - 1);
+                            int typeB = type[m];
+                            int p = paramsA + typeB * InteractionTable.STRIDE; // how A reacts to B
+                            int q = (typeB * numTypes + typeA) * InteractionTable.STRIDE; // how B reacts to A
+                            double distanceSquared = dx * dx + dy * dy;
+                            if (distanceSquared >= params[p + InteractionTable.PAIR_CUTOFF_SQUARED] || distanceSquared == 0) continue;
+                            pairs++;
 
-                    // Check if particle needs to move to a different cell
-                    if (newRow != row || newCol != col) {
-                        particlesToMove.add(new ParticleMove(a, row, col, newRow, newCol));
+                            double distance = Math.sqrt(distanceSquared);
+                            double inverseDistance = 1 / distance;
+                            double scaleA = forceScale(distance, params[p + InteractionTable.REPULSION],
+                                    params[p + InteractionTable.INVERSE_MIN_DISTANCE], params[p + InteractionTable.ATTRACTION],
+                                    params[p + InteractionTable.INVERSE_RADIUS]) * inverseDistance;
+                            double scaleB = forceScale(distance, params[q + InteractionTable.REPULSION],
+                                    params[q + InteractionTable.INVERSE_MIN_DISTANCE], params[q + InteractionTable.ATTRACTION],
+                                    params[q + InteractionTable.INVERSE_RADIUS]) * inverseDistance;
+                            fx += dx * scaleA;
+                            fy += dy * scaleA;
+                            forceX[m] -= dx * scaleB;
+                            forceY[m] -= dy * scaleB;
+                        }
+                        forceX[k] += fx;
+                        forceY[k] += fy;
                     }
                 }
             }
         }
+        return pairs;
+    }
 
-        // Move particles to new cells
-        for (ParticleMove move : particlesToMove) {
-            grid[move.oldRow][move.oldCol].remove(move.particle);
-            grid[move.newRow][move.newCol].add(move.particle);
+    private void integrateSlots(int from, int to) {
+        ParticleStore particles = stepParticles;
+        SpatialIndex index = stepIndex;
+        int[] particleIndex = index.particleIndex;
+        double[] x = index.x;
+        double[] y = index.y;
+        for (int k = from; k < to; k++) {
+            integrate(particles, particleIndex[k], x[k], y[k], forceX[k], forceY[k], index.width, index.height);
         }
     }
 
-    // Helper class to track particle movements
-    private static class ParticleMove {
-        Particle particle;
-        int oldRow, oldCol, newRow, newCol;
+    // Writes the next state of particle a from its current position and the total force on it
+    private void integrate(ParticleStore particles, int a, double ax, double ay, double fx, double fy,
+                                  double width, double height) {
+        // Update particle velocity and position
+        double dt = timeStep;
+        double avx = particles.vx[a] + fx * dt;
+        double avy = particles.vy[a] + fy * dt;
+        ax += avx * dt;
+        ay += avy * dt;
+
+        // Handle wrapping around world borders
+        particles.nextX[a] = (ax + width) % width;
+        particles.nextY[a] = (ay + height) % height;
+        particles.nextVx[a] = avx * stepFriction;
+        particles.nextVy[a] = avy * stepFriction;
+    }
 
-        ParticleMove(Particle p, int or, int oc, int nr, int nc) {
-            particle = p;
-            oldRow = or;
-            oldCol = oc;
-            newRow = nr;
-            newCol = nc;
+    // Runs a kind of work over all sorted particles, split into tiles of equal cost across
+    // the pool, and returns the number of pairs the tiles found within the cutoff.
+    // Integration costs the same for every particle, so its tiles are equal in size; so are
+    // tree tiles, whose cost the cell counts do not describe. List tiles hold equal shares
+    // of the listed pairs.
+    private long runSlots(int kind) {
+        int count = stepIndex.size();
+        if (pool == null || tiles.length <= 1) {
+            return runTile(kind, 0, count, 1);
         }
+        long total = kind == LIST ? neighborList.entries() : costPrefix[costPrefix.length - 1];
+        int from = 0;
+        tileCount = 0;
+        for (int i = 1; i <= tiles.length; i++) {
+            int to = i == tiles.length ? count
+                    : kind == INTEGRATE || kind == TREE ? (int) ((long) count * i / tiles.length)
+                    : kind == LIST ? neighborList.slotAtEntry(total * i / tiles.length)
+                    : slotAtCost(total * i / tiles.length);
+            if (to > from) {
+                addTile(kind, from, to, 1);
+                from = to;
+            }
+        }
+        return runTiles();
     }
 
-    // Helper method to calculate and apply forces between particles
-    private static void applyForces(Particle a, Particle b, Vector2D totalForce, double width, double height, double K) {
-        Vector2D direction = b.position.copy();
-        direction.subtract(a.position);
+    // Runs one symmetric phase, rows phase, phase + phases, ... below rowEnd, split into
+    // tiles of whole rows with equal cost. Rows cannot be split further, since the cells of a
+    // row write into each other's force sums.
+    private long runPhase(int phase, int rowEnd, int phases) {
+        if (pool == null || tiles.length <= 1) {
+            return runTile(PAIRS, phase, rowEnd, phases);
+        }
+        int gridWidth = stepIndex.gridWidth;
+        long[] costPrefix = this.costPrefix;
+        long total = 0;
+        for (int row = phase; row < rowEnd; row += phases) {
+            total += costPrefix[(row + 1) * gridWidth] - costPrefix[row * gridWidth];
+        }
+        // Cut before the row that would take the running cost past the next tile's share
+        tileCount = 0;
+        int tileStart = phase;
+        long cost = 0;
+        int next = 1;
+        for (int row = phase; row < rowEnd; row += phases) {
+            cost += costPrefix[(row + 1) * gridWidth] - costPrefix[row * gridWidth];
+            if (cost >= total * next / tiles.length && next < tiles.length) {
+                addTile(PAIRS, tileStart, row + phases, phases);
+                tileStart = row + phases;
+                while (next < tiles.length && cost >= total * next / tiles.length) next++;
+            }
+        }
+        if (tileStart < rowEnd) {
+            addTile(PAIRS, tileStart, rowEnd, phases);
+        }
+        return runTiles();
+    }
 
-        // Handle wrapping around the world borders
-        if (direction.x > 0.5 * width) direction.x -= width;
-        if (direction.x < -0.5 * width) direction.x += width;
-        if (direction.y > 0.5 * height) direction.y -= height;
-        if (direction.y < -0.5 * height) direction.y += height;
+    private void addTile(int kind, int from, int to, int stride) {
+        Tile tile = tiles[tileCount++];
+        tile.reinitialize();
+        tile.kind = kind;
+        tile.from = from;
+        tile.to = to;
+        tile.stride = stride;
+    }
 
-        double distance = direction.magnitude();
-        if (distance > 0) { // Prevent division by zero
-            direction.normalize();
+    private long runTiles() {
+        if (tileCount == 0) return 0;
+        if (tileCount == 1) {
+            tiles[0].compute();
+            return tiles[0].pairs;
+        }
+        stepTask.reinitialize();
+        if (ForkJoinTask.getPool() == pool) {
+            stepTask.invoke(); // already on a worker, e.g. stepping one of several worlds
+        } else {
+            pool.invoke(stepTask);
+        }
+
+        long pairs = 0;
+        for (int i = 0; i < tileCount; i++) pairs += tiles[i].pairs;
+        return pairs;
+    }
 
-            // Repulsive force
-            if (distance < minDistance[a.type][b.type]) {
-                Vector2D force = direction.copy();
-                force.scale(Math.abs(forces[a.type][b.type]) * -3);
-                force.scale(Vector2D.map(distance, 0, minDistance[a.type][b.type], 1, 0));
-                force.scale(K);
-                totalForce.add(force);
+    // Sorted particles from .. to, or rows from, from + stride, ... below to for PAIRS
+    private long runTile(int kind, int from, int to, int stride) {
+        return switch (kind) {
+            case GATHER -> gatherSlots(from, to);
+            case PAIRS -> accumulatePairs(from, to, stride);
+            case GATHER_FLOAT -> gatherFloatSlots(from, to);
+            case TREE -> treeSlots(from, to, treeStack);
+            case LIST -> neighborListSlots(from, to);
+            default -> {
+                integrateSlots(from, to);
+                yield 0;
             }
+        };
+    }
 
-            // Attraction Force
-            if (distance < radii[a.type][b.type]) {
-                Vector2D force = direction.copy();
-                force.scale(forces[a.type][b.type]);
-                force.scale(Vector2D.map(distance, 0, radii[a.type][b.type], 1, 0));
-                force.scale(K);
-                totalForce.add(force);
+    // Forks every tile; idle workers steal the ones still queued. ForkJoinTask is
+    // Serializable, but tasks here never leave the engine.
+    @SuppressWarnings("serial")
+    private final class StepTask extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (int i = 1; i < tileCount; i++) tiles[i].fork();
+            tiles[0].invoke();
+            for (int i = tileCount - 1; i > 0; i--) tiles[i].join();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class Tile extends RecursiveAction {
+        int kind;
+        int from;
+        int to;
+        int stride;
+        long pairs;
+        int[] buffer = new int[0]; // lists collected by a LIST_BUILD tile, kept for the next build
+        final int[] stack = new int[BarnesHut.stackSize()]; // traversal stack of a TREE tile
+
+        @Override
+        protected void compute() {
+            if (kind == LIST_BUILD) {
+                buffer = listSlots(from, to, buffer);
+                pairs = 0;
+            } else if (kind == TREE) {
+                pairs = treeSlots(from, to, stack);
+            } else {
+                pairs = runTile(kind, from, to, stride);
             }
         }
     }
-}
\ No newline at end of file
+
+    // Magnitude of the force one particle exerts on another at the given distance, positive
+    // towards the other particle. Repulsion ramps from full strength at contact to zero at
+    // minDistance, attraction from full strength to zero at the interaction radius.
+    static double forceScale(double distance, double repulsion, double inverseMinDistance,
+                             double attraction, double inverseRadius) {
+        double scale = 0;
+        double repulsionRamp = 1 - distance * inverseMinDistance;
+        if (repulsionRamp > 0) scale += repulsion * repulsionRamp;
+        double attractionRamp = 1 - distance * inverseRadius;
+        if (attractionRamp > 0) scale += attraction * attractionRamp;
+        return scale;
+    }
+}
@@ -0,0 +1,150 @@
+package com.physics.particlesimulator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Plays a TrajectoryReader recording back in real time without running PhysicsEngine.
+// A playhead advances in ticks at the recorded tick rate times the playback speed; every
+// render frame decodes up to the frame under the playhead and rebuilds the index the
+// renderer draws from. Frames the playhead passes over are decoded but never indexed or
+// drawn, and jumps longer than a keyframe interval seek through the nearest keyframe
+// instead of decoding every frame in between.
+public class ReplayPlayer implements AutoCloseable {
+    public static final double MIN_SPEED = 1.0 / 16;
+    public static final double MAX_SPEED = 64;
+
+    public final double width;
+    public final double height;
+    public final int numTypes;
+    public final long firstTick;
+    public final long lastTick;
+    public final SpatialIndex index;
+
+    private final TrajectoryReader reader;
+    private final TrajectoryReader.Frame frame = new TrajectoryReader.Frame();
+    private final ParticleStore particles;
+    private final double ticksPerSecond;
+    private double speed = 1;
+    private boolean paused = false;
+    private double playhead;
+    private long lastNanos = 0;
+    private long shownTick = Long.MIN_VALUE;
+    private long skippedFrames = 0;
+
+    // ticksPerSecond is the playback rate at 1x speed
+    public ReplayPlayer(Path path, double ticksPerSecond) throws IOException {
+        reader = new TrajectoryReader(path);
+        try {
+            if (!reader.next(frame)) {
+                throw new IOException("Trajectory has no frames: " + path);
+            }
+            numTypes = reader.numTypes;
+            firstTick = frame.tick;
+            reader.seek(Long.MAX_VALUE, frame);
+            lastTick = frame.tick;
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        this.width = reader.width;
+        this.height = reader.height;
+        this.ticksPerSecond = ticksPerSecond;
+        particles = new ParticleStore(frame.count);
+        index = new SpatialIndex(width, height, Math.max(Math.sqrt(width * height / Math.max(frame.count, 1)) * 2, 50));
+        playhead = firstTick;
+    }
+
+    // Advances the playhead by the time since the previous call and shows the frame under it
+    public void update(long nowNanos) throws IOException {
+        if (lastNanos != 0 && !paused) {
+            playhead += (nowNanos - lastNanos) / 1_000_000_000.0 * ticksPerSecond * speed;
+            if (playhead >= lastTick) {
+                playhead = lastTick;
+                paused = true;
+            }
+        }
+        lastNanos = nowNanos;
+        show((long) playhead);
+    }
+
+    private void show(long tick) throws IOException {
+        if (tick == shownTick) return;
+        int decoded;
+        if (tick < frame.tick || tick - frame.tick > reader.keyframeInterval) {
+            reader.seek(tick, frame);
+            decoded = 1;
+        } else {
+            decoded = reader.advance(tick, frame);
+        }
+        if (decoded == 0 && shownTick != Long.MIN_VALUE) return;
+        skippedFrames += Math.max(decoded - 1, 0);
+
+        int count = frame.count;
+        particles.resize(count);
+        System.arraycopy(frame.x, 0, particles.x, 0, count);
+        System.arraycopy(frame.y, 0, particles.y, 0, count);
+        System.arraycopy(frame.type, 0, particles.type, 0, count);
+        index.build(particles);
+        shownTick = tick;
+    }
+
+    public void togglePause() {
+        if (paused && playhead >= lastTick) {
+            playhead = firstTick;
+        }
+        paused = !paused;
+    }
+
+    public void scaleSpeed(double factor) {
+        speed = Math.min(Math.max(speed * factor, MIN_SPEED), MAX_SPEED);
+    }
+
+    // Moves the playhead by the given number of ticks, clamped to the recording
+    public void scrub(double ticks) {
+        playhead = Math.min(Math.max(playhead + ticks, firstTick), lastTick);
+    }
+
+    // Moves the playhead to the next or previous keyframe
+    public void jumpKeyframe(int direction) {
+        long current = (long) playhead;
+        if (direction > 0) {
+            for (int k = 0; k < reader.keyframeCount(); k++) {
+                if (reader.keyframeTick(k) > current) {
+                    playhead = reader.keyframeTick(k);
+                    return;
+                }
+            }
+            playhead = lastTick;
+        } else {
+            for (int k = reader.keyframeCount() - 1; k >= 0; k--) {
+                if (reader.keyframeTick(k) < current) {
+                    playhead = reader.keyframeTick(k);
+                    return;
+                }
+            }
+            playhead = firstTick;
+        }
+    }
+
+    public long getTick() {
+        return frame.tick;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Frames decoded but never shown because the playhead moved past them
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
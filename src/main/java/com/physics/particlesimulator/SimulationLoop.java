@@ -0,0 +1,167 @@
+package com.physics.particlesimulator;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Steps a World on its own thread at a fixed tick rate and publishes a copy of its spatial
+// index through a TripleBuffer, so the JavaFX thread always has a complete frame to draw
+// and never waits for a step. Ticks run in frames of a fixed number of substeps, and only
+// the last substep of a frame needs a fresh index. Due frames are counted from wall
+// time, so the simulated speed is tick rate times the engine's time step on any machine
+// that keeps up; one that falls behind runs up to the catch-up limit of frames back to
+// back and then drops the rest, so it slows down instead of falling further behind.
+// Anything that changes world state from another thread, like regenerating parameters,
+// goes through submit() and runs on the physics thread between frames.
+public class SimulationLoop {
+    public static class Frame {
+        public final SpatialIndex index;
+        public long tick;
+        public long pairCount;
+        public double cutoff;
+
+        Frame(double width, double height, double cellSize) {
+            index = new SpatialIndex(width, height, cellSize);
+        }
+    }
+
+    private final World world;
+    private final TripleBuffer<Frame> frames;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final long tickNanos;
+    private int substeps = 1;
+    private int maxCatchUp = 4;
+    private volatile boolean running = false;
+    private volatile double ticksPerSecond = 0;
+    private Thread thread;
+    private TrajectoryRecorder recorder;
+    private SimulationMetrics metrics;
+
+    // ticksPerSecond <= 0 steps as fast as possible
+    public SimulationLoop(World world, double ticksPerSecond) {
+        this.world = world;
+        SpatialIndex index = world.getIndex();
+        this.tickNanos = ticksPerSecond > 0 ? (long)(1_000_000_000L / ticksPerSecond) : 0;
+        frames = new TripleBuffer<>(() -> new Frame(index.width, index.height, index.cellWidth));
+        publish();
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "physics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Records every tick from now on; set before start(). The caller closes the recorder
+    // after stop().
+    public void setRecorder(TrajectoryRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Feeds every step's phase timings and counters to metrics; set before start()
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Ticks per published frame; set before start()
+    public void setSubsteps(int substeps) {
+        if (substeps < 1) {
+            throw new IllegalArgumentException("Substeps must be at least 1: " + substeps);
+        }
+        this.substeps = substeps;
+    }
+
+    // Most frames run back to back to make up for a stall; set before start()
+    public void setMaxCatchUp(int frames) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Catch-up limit must be at least 1: " + frames);
+        }
+        this.maxCatchUp = frames;
+    }
+
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    // Latest published frame; valid until the next call from the same (render) thread
+    public Frame latest() {
+        return frames.front();
+    }
+
+    // The simulated world; only touch it on the physics thread, e.g. inside a submitted command
+    public World getWorld() {
+        return world;
+    }
+
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    private void run() {
+        long frameNanos = tickNanos * substeps;
+        long last = System.nanoTime();
+        long due = frameNanos; // wall time not yet simulated; the first frame runs at once
+        long rateStart = last;
+        int ticksSinceRate = 0;
+
+        while (running) {
+            Runnable command;
+            while ((command = commands.poll()) != null) {
+                command.run();
+            }
+
+            if (frameNanos > 0) {
+                long now = System.nanoTime();
+                due += now - last;
+                last = now;
+                if (due < frameNanos) {
+                    LockSupport.parkNanos(frameNanos - due);
+                    continue;
+                }
+                // Behind by more than the catch-up limit: drop the missed frames
+                due = Math.min(due, maxCatchUp * frameNanos) - frameNanos;
+            }
+
+            for (int i = 0; i < substeps; i++) {
+                world.step(i == substeps - 1);
+                if (metrics != null) {
+                    metrics.recordStep(world.getEngine().getMetrics());
+                }
+                if (recorder != null) {
+                    recorder.record(world.getParticles(), world.getTick());
+                }
+            }
+            publish();
+
+            long now = System.nanoTime();
+            ticksSinceRate += substeps;
+            if (now - rateStart >= 1_000_000_000L) {
+                ticksPerSecond = ticksSinceRate / ((now - rateStart) / 1_000_000_000.0);
+                ticksSinceRate = 0;
+                rateStart = now;
+            }
+        }
+    }
+
+    private void publish() {
+        Frame frame = frames.back();
+        frame.index.copyFrom(world.getIndex());
+        frame.tick = world.getTick();
+        frame.pairCount = world.getEngine().getPairCount();
+        frame.cutoff = world.getEngine().getCutoff();
+        frames.publish();
+    }
+}
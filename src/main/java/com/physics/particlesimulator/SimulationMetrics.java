@@ -0,0 +1,167 @@
+package com.physics.particlesimulator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+// Per-phase timings and counters of the physics steps and the rendered frames, averaged
+// over one-second windows like the FPS counter. The physics thread calls recordStep() and
+// the JavaFX thread recordFrame(); each only touches its own window and publishes the
+// averages through volatile fields, which the overlay and JMX read. A reader may see one
+// window's forces next to the previous window's index time, which is fine for a display.
+public class SimulationMetrics implements SimulationMetricsMBean {
+    public static final String OBJECT_NAME = "com.physics.particlesimulator:type=Simulation";
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    // Physics window
+    private final StepMetrics stepTotals = new StepMetrics();
+    private long stepWindowStart = 0;
+    private int steps = 0;
+
+    // Render window
+    private long gridTotal = 0;
+    private long particleTotal = 0;
+    private long hudTotal = 0;
+    private long frameWindowStart = 0;
+    private int frames = 0;
+
+    private volatile double stepsPerSecond;
+    private volatile double forceMillis;
+    private volatile double integrateMillis;
+    private volatile double indexMillis;
+    private volatile double candidatePairs;
+    private volatile double pairs;
+    private volatile double migrated;
+    private volatile int maxCellOccupancy;
+
+    private volatile double framesPerSecond;
+    private volatile double gridMillis;
+    private volatile double particleDrawMillis;
+    private volatile double hudMillis;
+
+    // Exposes these metrics on the platform MBean server, e.g. for JConsole or JMC
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Was never registered
+        }
+    }
+
+    // Adds the step that just finished; physics thread only
+    public void recordStep(StepMetrics step) {
+        long now = System.nanoTime();
+        if (stepWindowStart == 0) stepWindowStart = now;
+        stepTotals.add(step);
+        steps++;
+        if (now - stepWindowStart >= WINDOW_NANOS) {
+            stepsPerSecond = steps / ((now - stepWindowStart) / 1_000_000_000.0);
+            forceMillis = stepTotals.forceNanos / NANOS_PER_MILLI / steps;
+            integrateMillis = stepTotals.integratedSteps > 0
+                    ? stepTotals.integrateNanos / NANOS_PER_MILLI / stepTotals.integratedSteps : Double.NaN;
+            indexMillis = stepTotals.indexNanos / NANOS_PER_MILLI / steps;
+            candidatePairs = (double) stepTotals.candidatePairs / steps;
+            pairs = (double) stepTotals.pairs / steps;
+            migrated = (double) stepTotals.migrated / steps;
+            maxCellOccupancy = stepTotals.maxCellOccupancy;
+            stepTotals.clear();
+            steps = 0;
+            stepWindowStart = now;
+        }
+    }
+
+    // Adds the phases of the frame that was just drawn; JavaFX thread only
+    public void recordFrame(long gridNanos, long particleNanos, long hudNanos) {
+        long now = System.nanoTime();
+        if (frameWindowStart == 0) frameWindowStart = now;
+        gridTotal += gridNanos;
+        particleTotal += particleNanos;
+        hudTotal += hudNanos;
+        frames++;
+        if (now - frameWindowStart >= WINDOW_NANOS) {
+            framesPerSecond = frames / ((now - frameWindowStart) / 1_000_000_000.0);
+            gridMillis = gridTotal / NANOS_PER_MILLI / frames;
+            particleDrawMillis = particleTotal / NANOS_PER_MILLI / frames;
+            hudMillis = hudTotal / NANOS_PER_MILLI / frames;
+            gridTotal = 0;
+            particleTotal = 0;
+            hudTotal = 0;
+            frames = 0;
+            frameWindowStart = now;
+        }
+    }
+
+    @Override
+    public double getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    @Override
+    public double getForceMillis() {
+        return forceMillis;
+    }
+
+    @Override
+    public double getIntegrateMillis() {
+        return integrateMillis;
+    }
+
+    @Override
+    public double getIndexMillis() {
+        return indexMillis;
+    }
+
+    @Override
+    public double getCandidatePairs() {
+        return candidatePairs;
+    }
+
+    @Override
+    public double getPairs() {
+        return pairs;
+    }
+
+    @Override
+    public double getMigrated() {
+        return migrated;
+    }
+
+    @Override
+    public int getMaxCellOccupancy() {
+        return maxCellOccupancy;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public double getGridMillis() {
+        return gridMillis;
+    }
+
+    @Override
+    public double getParticleDrawMillis() {
+        return particleDrawMillis;
+    }
+
+    @Override
+    public double getHudMillis() {
+        return hudMillis;
+    }
+
+    @Override
+    public double getFrameMillis() {
+        return gridMillis + particleDrawMillis + hudMillis;
+    }
+}
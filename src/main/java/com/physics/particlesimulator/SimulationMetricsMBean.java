@@ -0,0 +1,32 @@
+package com.physics.particlesimulator;
+
+// JMX view of SimulationMetrics. Times are milliseconds per step or frame and counts are
+// per step, averaged over the last completed one-second window. Integration is NaN when
+// no step in the window had a separate integration pass, i.e. outside symmetric mode.
+public interface SimulationMetricsMBean {
+    double getStepsPerSecond();
+
+    double getForceMillis();
+
+    double getIntegrateMillis();
+
+    double getIndexMillis();
+
+    double getCandidatePairs();
+
+    double getPairs();
+
+    double getMigrated();
+
+    int getMaxCellOccupancy();
+
+    double getFramesPerSecond();
+
+    double getGridMillis();
+
+    double getParticleDrawMillis();
+
+    double getHudMillis();
+
+    double getFrameMillis();
+}
@@ -3,15 +3,34 @@ package com.physics.particlesimulator;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 public class SimulationView {
+    // Paints particles into or out of the world around a point, for the mouse brush
+    public interface Brush {
+        void paint(double worldX, double worldY, double radius, boolean erase);
+    }
+
+    private static final double BRUSH_RADIUS = 40; // in screen pixels, whatever the zoom
+
     private final javafx.scene.canvas.Canvas canvas;
     private double lastMouseX;
     private double lastMouseY;
     private boolean dragging = false;
+    private boolean brushing = false;
+    private Brush onBrush = (worldX, worldY, radius, erase) -> {};
+    private Runnable onRegenerate = () -> {};
+    private Runnable onSave = () -> {};
+    private Runnable onToggleMetrics = () -> {};
+    private final Map<KeyCode, Runnable> keyActions = new EnumMap<>(KeyCode.class);
 
     public SimulationView(Stage stage, Camera2D camera) {
 
@@ -28,8 +47,11 @@ public class SimulationView {
             switch (e.getCode()) {
                 case W -> camera.move(0, -20);
                 case S -> camera.move(0, 20);
-                case A -> PhysicsEngine.setParameters(7);
+                case A -> onRegenerate.run();
                 case D -> camera.move(20, 0);
+                case K -> onSave.run();
+                case M -> onToggleMetrics.run();
+                default -> keyActions.getOrDefault(e.getCode(), () -> {}).run();
             }
         });
 
@@ -38,16 +60,24 @@ public class SimulationView {
             camera.zoomAroundScreenCenter(factor, canvas.getWidth(), canvas.getHeight());
         });
 
+        // Dragging pans; shift-dragging spawns particles and right-dragging removes them
         scene.setOnMousePressed(e -> {
-            dragging = true;
+            brushing = e.isShiftDown() || e.getButton() == MouseButton.SECONDARY;
+            dragging = !brushing;
             lastMouseX = e.getSceneX();
             lastMouseY = e.getSceneY();
+            if (brushing) paint(e, camera);
         });
 
-        scene.setOnMouseReleased(e -> dragging = false);
+        scene.setOnMouseReleased(e -> {
+            dragging = false;
+            brushing = false;
+        });
 
         scene.setOnMouseDragged(e -> {
-            if (dragging) {
+            if (brushing) {
+                paint(e, camera);
+            } else if (dragging) {
                 double dx = e.getSceneX() - lastMouseX;
                 double dy = e.getSceneY() - lastMouseY;
                 camera.move(-dx, -dy); // Invert to move camera with drag
@@ -61,6 +91,36 @@ public class SimulationView {
         stage.show();
     }
 
+    private void paint(MouseEvent e, Camera2D camera) {
+        onBrush.paint(camera.screenToWorldX(e.getSceneX()), camera.screenToWorldY(e.getSceneY()),
+                BRUSH_RADIUS / camera.zoom, e.isSecondaryButtonDown());
+    }
+
+    // Action for the mouse brush, called on every press and drag event while painting
+    public void setOnBrush(Brush onBrush) {
+        this.onBrush = onBrush;
+    }
+
+    // Action for the A key, which regenerates the interaction parameters
+    public void setOnRegenerate(Runnable onRegenerate) {
+        this.onRegenerate = onRegenerate;
+    }
+
+    // Action for the K key, which saves a checkpoint
+    public void setOnSave(Runnable onSave) {
+        this.onSave = onSave;
+    }
+
+    // Action for the M key, which shows or hides the metrics overlay
+    public void setOnToggleMetrics(Runnable onToggleMetrics) {
+        this.onToggleMetrics = onToggleMetrics;
+    }
+
+    // Action for any other key, e.g. the replay controls
+    public void bindKey(KeyCode code, Runnable action) {
+        keyActions.put(code, action);
+    }
+
     public javafx.scene.canvas.Canvas getCanvas() {
         return canvas;
     }
@@ -0,0 +1,150 @@
+package com.physics.particlesimulator;
+
+import java.util.Arrays;
+
+// Uniform grid over the world, rebuilt from scratch every step with a counting sort over
+// cell keys. Particles of cell c occupy the contiguous range cellStart[c] .. cellStart[c + 1]
+// of the sorted arrays, and x/y/type hold copies of their state in that order, so scanning a
+// cell is a linear walk over memory. particleIndex maps a sorted slot back to the store.
+public class SpatialIndex {
+    public final double width;
+    public final double height;
+    public int gridWidth;
+    public int gridHeight;
+    public double cellWidth;
+    public double cellHeight;
+
+    public int[] cellStart = new int[1];
+    public int[] particleIndex = new int[0];
+    public double[] x = new double[0];
+    public double[] y = new double[0];
+    public int[] type = new int[0];
+    private int[] cellKey = new int[0];
+    private int[] cellCursor = new int[0];
+    private int size = 0;
+    private int migrated = 0;
+
+    public SpatialIndex(double width, double height, double cellSize) {
+        this.width = width;
+        this.height = height;
+        setCellSize(cellSize);
+    }
+
+    public void setCellSize(double cellSize) {
+        gridWidth = Math.max(1, (int)(width / cellSize));
+        gridHeight = Math.max(1, (int)(height / cellSize));
+        cellWidth = width / gridWidth;
+        cellHeight = height / gridHeight;
+        int cells = gridWidth * gridHeight;
+        if (cellStart.length != cells + 1) {
+            cellStart = new int[cells + 1];
+            cellCursor = new int[cells];
+        }
+    }
+
+    public int cellCount() {
+        return gridWidth * gridHeight;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Particles whose cell differs from the one they had in the previous build, by store index
+    public int migrated() {
+        return migrated;
+    }
+
+    public int maxOccupancy() {
+        int max = 0;
+        for (int cell = 0; cell < cellCount(); cell++) {
+            max = Math.max(max, cellStart[cell + 1] - cellStart[cell]);
+        }
+        return max;
+    }
+
+    public int cellOf(double px, double py) {
+        int col = Math.min(Math.max((int)(px / cellWidth), 0), gridWidth - 1);
+        int row = Math.min(Math.max((int)(py / cellHeight), 0), gridHeight - 1);
+        return row * gridWidth + col;
+    }
+
+    // Makes this index an exact copy of another, reusing its arrays when they are large enough
+    public void copyFrom(SpatialIndex source) {
+        if (source.width != width || source.height != height) {
+            throw new IllegalArgumentException("Cannot copy an index over a different world size");
+        }
+        gridWidth = source.gridWidth;
+        gridHeight = source.gridHeight;
+        cellWidth = source.cellWidth;
+        cellHeight = source.cellHeight;
+        if (cellStart.length != source.cellStart.length) {
+            cellStart = new int[source.cellStart.length];
+            cellCursor = new int[source.cellStart.length - 1];
+        }
+        System.arraycopy(source.cellStart, 0, cellStart, 0, cellStart.length);
+
+        int count = source.size;
+        if (particleIndex.length < count) {
+            int capacity = source.particleIndex.length;
+            particleIndex = new int[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            type = new int[capacity];
+            cellKey = new int[capacity];
+        }
+        System.arraycopy(source.particleIndex, 0, particleIndex, 0, count);
+        System.arraycopy(source.x, 0, x, 0, count);
+        System.arraycopy(source.y, 0, y, 0, count);
+        System.arraycopy(source.type, 0, type, 0, count);
+        size = count;
+    }
+
+    // Grows the arrays to index at least capacity particles, e.g. when particles are
+    // queued for spawning, keeping the current contents, so a later build does not have to
+    public void reserve(int capacity) {
+        if (particleIndex.length < capacity) {
+            particleIndex = Arrays.copyOf(particleIndex, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            type = Arrays.copyOf(type, capacity);
+            cellKey = Arrays.copyOf(cellKey, capacity);
+        }
+    }
+
+    public void build(ParticleStore particles) {
+        int count = particles.size();
+        int cells = cellCount();
+        if (particleIndex.length < count) {
+            reserve(particles.capacity());
+        }
+        double[] px = particles.x;
+        double[] py = particles.y;
+        int[] ptype = particles.type;
+
+        // Count particles per cell, shifted by one so the prefix sum yields start offsets
+        Arrays.fill(cellStart, 0);
+        int moved = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = cellOf(px[i], py[i]);
+            if (cellKey[i] != cell) moved++;
+            cellKey[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        migrated = moved;
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+
+        // Scatter in store order, which keeps the sort stable and the layout deterministic
+        System.arraycopy(cellStart, 0, cellCursor, 0, cells);
+        for (int i = 0; i < count; i++) {
+            int slot = cellCursor[cellKey[i]]++;
+            particleIndex[slot] = i;
+            x[slot] = px[i];
+            y[slot] = py[i];
+            type[slot] = ptype[i];
+        }
+        size = count;
+    }
+}
@@ -0,0 +1,73 @@
+package com.physics.particlesimulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// JFR event for one World step, committed only while a recording has it enabled, e.g.
+// java -XX:StartFlightRecording:filename=run.jfr ... The event's own duration is the
+// whole step; the fields split it into the engine's phases.
+@Name("com.physics.particlesimulator.Step")
+@Label("Simulation Step")
+@Category("Particle Simulator")
+final class StepEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(StepEvent.class);
+
+    @Label("Tick")
+    long tick;
+
+    @Label("Particles")
+    int particles;
+
+    @Label("Forces")
+    @Description("Pair forces; includes integration outside symmetric mode")
+    @Timespan(Timespan.NANOSECONDS)
+    long forceNanos;
+
+    @Label("Integration")
+    @Description("Separate integration pass of symmetric mode; N/A in other modes")
+    @Timespan(Timespan.NANOSECONDS)
+    long integrateNanos;
+
+    @Label("Index Rebuild")
+    @Timespan(Timespan.NANOSECONDS)
+    long indexNanos;
+
+    @Label("Candidate Pairs")
+    long candidatePairs;
+
+    @Label("Pairs Within Cutoff")
+    long pairs;
+
+    @Label("Migrated Particles")
+    long migrated;
+
+    @Label("Max Cell Occupancy")
+    int maxCellOccupancy;
+
+    @Label("Neighbor Lists Rebuilt")
+    boolean listBuilt;
+
+    // Whether a recording has the event enabled. Checked before creating one, so steps
+    // allocate nothing while none has.
+    static boolean enabled() {
+        return TYPE.isEnabled();
+    }
+
+    void set(long tick, int particles, StepMetrics metrics) {
+        this.tick = tick;
+        this.particles = particles;
+        forceNanos = metrics.forceNanos;
+        integrateNanos = metrics.integratedSteps > 0 ? metrics.integrateNanos : Long.MIN_VALUE; // shown as N/A
+        indexNanos = metrics.indexNanos;
+        candidatePairs = metrics.candidatePairs;
+        pairs = metrics.pairs;
+        migrated = metrics.migrated;
+        maxCellOccupancy = metrics.maxCellOccupancy;
+        listBuilt = metrics.listBuilds > 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.physics.particlesimulator;
+
+// Phase timings and counters of one engine step, filled in by PhysicsEngine.updateAll.
+// Pair counts follow the engine's mode: ordered pairs with the full stencil, unordered
+// pairs in symmetric mode. In list mode the candidates are the listed pairs, plus the
+// stencil candidates of the list build on steps that rebuild the lists.
+public class StepMetrics {
+    public long forceNanos; // pair forces and list builds; outside symmetric mode this includes integration
+    public long integrateNanos; // separate integration pass of symmetric mode
+    public long integratedSteps; // steps that had that pass; other modes integrate inside the force pass
+    public long indexNanos; // buffer swap and index rebuild, which moves particles between cells
+    public long candidatePairs; // pairs in each other's stencil cells, whose distance is checked
+    public long pairs; // candidates within the cutoff
+    public long migrated; // particles whose cell changed in the rebuild
+    public int maxCellOccupancy; // most particles in one cell during the step
+    public long listBuilds; // 1 when the step rebuilt its neighbor lists in list mode
+
+    public long totalNanos() {
+        return forceNanos + integrateNanos + indexNanos;
+    }
+
+    // Adds another step's values, keeping the larger occupancy
+    public void add(StepMetrics other) {
+        forceNanos += other.forceNanos;
+        integrateNanos += other.integrateNanos;
+        integratedSteps += other.integratedSteps;
+        indexNanos += other.indexNanos;
+        candidatePairs += other.candidatePairs;
+        pairs += other.pairs;
+        migrated += other.migrated;
+        listBuilds += other.listBuilds;
+        maxCellOccupancy = Math.max(maxCellOccupancy, other.maxCellOccupancy);
+    }
+
+    public void clear() {
+        forceNanos = 0;
+        integrateNanos = 0;
+        integratedSteps = 0;
+        indexNanos = 0;
+        candidatePairs = 0;
+        pairs = 0;
+        migrated = 0;
+        listBuilds = 0;
+        maxCellOccupancy = 0;
+    }
+}
@@ -0,0 +1,249 @@
+package com.physics.particlesimulator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads a file written by TrajectoryRecorder frame by frame. Delta frames only decode on
+// top of the frame before them, so random access goes through keyframes: seek() jumps to
+// the last keyframe at or before a tick and decodes forward from there. Recordings that
+// were not closed cleanly have no keyframe index; it is rebuilt by scanning frame headers.
+public class TrajectoryReader implements AutoCloseable {
+    // One decoded frame; positions are the centers of their quantization steps
+    public static class Frame {
+        public long tick;
+        public int count;
+        public double[] x = new double[0];
+        public double[] y = new double[0];
+        public int[] type = new int[0];
+    }
+
+    public final double width;
+    public final double height;
+    public final int keyframeInterval;
+    public final int numTypes; // every recorded type is below this
+
+    private final FileChannel channel;
+    private final long end; // end of the frame section
+    private final double stepX;
+    private final double stepY;
+    private long[] keyframeTicks = new long[64];
+    private long[] keyframeOffsets = new long[64];
+    private int keyframes = 0;
+
+    // Decoder state
+    private long position;
+    private char[] previousX = new char[0];
+    private char[] previousY = new char[0];
+    private int[] previousType = new int[0];
+    private int previousCount = -1;
+    private ByteBuffer in = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    public TrajectoryReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, TrajectoryRecorder.HEADER_BYTES);
+            if (header.getInt() != TrajectoryRecorder.MAGIC) {
+                throw new IOException("Not a trajectory file: " + path);
+            }
+            int version = header.getInt();
+            if (version != TrajectoryRecorder.VERSION) {
+                throw new IOException("Unsupported trajectory version " + version + " in " + path);
+            }
+            width = header.getDouble();
+            height = header.getDouble();
+            keyframeInterval = header.getInt();
+            numTypes = header.getInt();
+            if (numTypes < 1 || numTypes > InteractionTable.MAX_TYPES) {
+                throw new IOException("Corrupt trajectory header: " + numTypes + " types in " + path);
+            }
+            stepX = width / 65536;
+            stepY = height / 65536;
+            end = readIndex();
+            position = TrajectoryRecorder.HEADER_BYTES;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int keyframeCount() {
+        return keyframes;
+    }
+
+    public long keyframeTick(int keyframe) {
+        return keyframeTicks[keyframe];
+    }
+
+    public long firstTick() {
+        return keyframes > 0 ? keyframeTicks[0] : 0;
+    }
+
+    // Positions the reader so that next() returns the given keyframe
+    public void seekKeyframe(int keyframe) {
+        position = keyframeOffsets[keyframe];
+        previousCount = -1;
+    }
+
+    // Decodes the last frame at or before tick into frame; returns false when the recording
+    // starts after tick. next() then continues with the frame after it.
+    public boolean seek(long tick, Frame frame) throws IOException {
+        int keyframe = Arrays.binarySearch(keyframeTicks, 0, keyframes, tick);
+        if (keyframe < 0) {
+            keyframe = -keyframe - 2;
+            if (keyframe < 0) return false;
+        }
+        seekKeyframe(keyframe);
+        next(frame);
+        advance(tick, frame);
+        return true;
+    }
+
+    // Decodes forward through every frame at or before tick, leaving the last one in frame.
+    // Returns the number of frames decoded; frame is untouched when that is zero.
+    public int advance(long tick, Frame frame) throws IOException {
+        int decoded = 0;
+        while (position + TrajectoryRecorder.FRAME_HEADER_BYTES <= end && peekTick() <= tick && next(frame)) {
+            decoded++;
+        }
+        return decoded;
+    }
+
+    // Decodes the next frame into frame; returns false at the end of the recording
+    public boolean next(Frame frame) throws IOException {
+        if (position + TrajectoryRecorder.FRAME_HEADER_BYTES > end) return false;
+        ByteBuffer header = read(position, TrajectoryRecorder.FRAME_HEADER_BYTES);
+        int length = header.getInt();
+        byte kind = header.get();
+        long tick = header.getLong();
+        int count = header.getInt();
+        if (position + TrajectoryRecorder.FRAME_HEADER_BYTES + length > end) return false;
+        if (kind == TrajectoryRecorder.DELTA && previousCount != count) {
+            throw new IOException("Delta frame at tick " + tick + " does not follow its keyframe");
+        }
+        ByteBuffer payload = read(position + TrajectoryRecorder.FRAME_HEADER_BYTES, length);
+        position += TrajectoryRecorder.FRAME_HEADER_BYTES + length;
+
+        if (previousX.length < count) {
+            previousX = new char[count];
+            previousY = new char[count];
+            previousType = new int[count];
+        }
+        if (kind == TrajectoryRecorder.KEYFRAME) {
+            for (int i = 0; i < count; i++) {
+                int type = getVarint(payload);
+                // Players index their colors by type
+                if (type < 0 || type >= numTypes) {
+                    throw new IOException("Keyframe at tick " + tick + " has type " + type + ", outside the recording's "
+                            + numTypes + " types");
+                }
+                previousType[i] = type;
+            }
+            Arrays.fill(previousX, 0, count, (char) 0);
+            Arrays.fill(previousY, 0, count, (char) 0);
+        }
+        if (frame.x.length < count) {
+            frame.x = new double[count];
+            frame.y = new double[count];
+            frame.type = new int[count];
+        }
+        char[] qx = previousX;
+        char[] qy = previousY;
+        for (int i = 0; i < count; i++) {
+            qx[i] = (char) (qx[i] + unzigzag(getVarint(payload)));
+            qy[i] = (char) (qy[i] + unzigzag(getVarint(payload)));
+            frame.x[i] = (qx[i] + 0.5) * stepX;
+            frame.y[i] = (qy[i] + 0.5) * stepY;
+        }
+        System.arraycopy(previousType, 0, frame.type, 0, count);
+        previousCount = count;
+        frame.tick = tick;
+        frame.count = count;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long peekTick() throws IOException {
+        return read(position + 5, Long.BYTES).getLong();
+    }
+
+    // Loads the keyframe index from the end of the file, or rebuilds it by scanning the
+    // frames when it is missing. Returns the offset where the frames end.
+    private long readIndex() throws IOException {
+        long size = channel.size();
+        if (size >= TrajectoryRecorder.HEADER_BYTES + 8) {
+            ByteBuffer trailer = read(size - 8, 8);
+            int count = trailer.getInt();
+            long indexStart = size - 8 - 16L * count;
+            if (trailer.getInt() == TrajectoryRecorder.INDEX_MAGIC && count >= 0
+                    && indexStart >= TrajectoryRecorder.HEADER_BYTES) {
+                ByteBuffer index = read(indexStart, 16 * count);
+                keyframeTicks = new long[Math.max(count, 1)];
+                keyframeOffsets = new long[Math.max(count, 1)];
+                for (int k = 0; k < count; k++) {
+                    keyframeTicks[k] = index.getLong();
+                    keyframeOffsets[k] = index.getLong();
+                }
+                keyframes = count;
+                return indexStart;
+            }
+        }
+
+        long offset = TrajectoryRecorder.HEADER_BYTES;
+        while (offset + TrajectoryRecorder.FRAME_HEADER_BYTES <= size) {
+            ByteBuffer header = read(offset, TrajectoryRecorder.FRAME_HEADER_BYTES);
+            int length = header.getInt();
+            byte kind = header.get();
+            long tick = header.getLong();
+            long next = offset + TrajectoryRecorder.FRAME_HEADER_BYTES + length;
+            if (length < 0 || next > size) break; // frame cut off by the crash
+            if (kind == TrajectoryRecorder.KEYFRAME) {
+                if (keyframes == keyframeTicks.length) {
+                    keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+                    keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+                }
+                keyframeTicks[keyframes] = tick;
+                keyframeOffsets[keyframes] = offset;
+                keyframes++;
+            }
+            offset = next;
+        }
+        return offset;
+    }
+
+    // Reads length bytes at offset into the shared buffer, ready to be consumed
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if (in.capacity() < length) {
+            in = ByteBuffer.allocate(Math.max(length, in.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        in.clear().limit(length);
+        while (in.hasRemaining()) {
+            if (channel.read(in, offset + in.position()) < 0) {
+                throw new EOFException("Unexpected end of trajectory file");
+            }
+        }
+        return in.flip();
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.physics.particlesimulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Streams particle trajectories to a file for offline analysis. record() runs on the
+// simulation thread and only quantizes positions to 16 bits per axis over the world bounds
+// into a pooled slot; a background writer delta-encodes each frame against the previous one
+// and writes it. The slot pool is bounded: when the writer falls behind, record() drops the
+// frame instead of blocking, and the next written frame simply deltas against the last one
+// that made it to disk.
+//
+// File layout, little-endian:
+//   header   32 bytes: magic "PTRJ", version, width, height, keyframe interval, type count
+//   frames   payload length int, kind byte (0 keyframe, 1 delta), tick long, count int,
+//            payload: keyframes hold each type as a varint, then per particle the x and y
+//            deltas as zigzag varints; a keyframe deltas against zero
+//   index    tick and file offset of every keyframe as long pairs, keyframe count int,
+//            magic "PTRI"; missing when the recording did not close cleanly
+public class TrajectoryRecorder implements AutoCloseable {
+    public static final int MAGIC = 0x4A525450; // "PTRJ" read as little-endian bytes
+    public static final int INDEX_MAGIC = 0x49525450; // "PTRI"
+    public static final int VERSION = 2; // 2 added the type count
+    static final int HEADER_BYTES = 32;
+    static final int FRAME_HEADER_BYTES = 17;
+    static final byte KEYFRAME = 0;
+    static final byte DELTA = 1;
+
+    // Quantized frame as handed from the simulation thread to the writer
+    private static class Slot {
+        long tick;
+        int count;
+        char[] x = new char[0];
+        char[] y = new char[0];
+        int[] type = new int[0];
+    }
+
+    private static final Slot END = new Slot();
+
+    private final FileChannel channel;
+    private final double scaleX;
+    private final double scaleY;
+    private final int keyframeInterval;
+    private final BlockingQueue<Slot> free;
+    private final BlockingQueue<Slot> written;
+    private final Thread writer;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+    private long recorded = 0;
+    private long dropped = 0;
+
+    // Writer state
+    private char[] previousX = new char[0];
+    private char[] previousY = new char[0];
+    private int[] previousType = new int[0];
+    private int previousCount = -1;
+    private int sinceKeyframe = 0;
+    private ByteBuffer out = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long[] keyframeTicks = new long[64];
+    private long[] keyframeOffsets = new long[64];
+    private int keyframes = 0;
+
+    // numTypes is the world's type count, so a player can size its colors before it has
+    // seen every type; queueCapacity is the number of frames that may be waiting for the
+    // writer at once
+    public TrajectoryRecorder(Path path, double width, double height, int numTypes, int keyframeInterval,
+                              int queueCapacity) throws IOException {
+        if (numTypes < 1 || numTypes > InteractionTable.MAX_TYPES) {
+            throw new IllegalArgumentException("Type count must be between 1 and " + InteractionTable.MAX_TYPES
+                    + ": " + numTypes);
+        }
+        if (keyframeInterval < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Keyframe interval and queue capacity must be positive");
+        }
+        this.scaleX = 65536 / width;
+        this.scaleY = 65536 / height;
+        this.keyframeInterval = keyframeInterval;
+        free = new ArrayBlockingQueue<>(queueCapacity);
+        written = new ArrayBlockingQueue<>(queueCapacity + 1);
+        for (int i = 0; i < queueCapacity; i++) {
+            free.add(new Slot());
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putDouble(width);
+        header.putDouble(height);
+        header.putInt(keyframeInterval);
+        header.putInt(numTypes);
+        header.clear();
+        writeFully(header);
+
+        writer = new Thread(this::runWriter, "trajectory-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Queues the current positions; returns false when the frame was dropped because the
+    // writer is behind or has failed. Call from the thread that steps the store.
+    public boolean record(ParticleStore particles, long tick) {
+        Slot slot = closed || failure != null ? null : free.poll();
+        if (slot == null) {
+            dropped++;
+            return false;
+        }
+        int count = particles.size();
+        if (slot.x.length < count) {
+            int capacity = particles.capacity();
+            slot.x = new char[capacity];
+            slot.y = new char[capacity];
+            slot.type = new int[capacity];
+        }
+        double[] px = particles.x;
+        double[] py = particles.y;
+        char[] qx = slot.x;
+        char[] qy = slot.y;
+        for (int i = 0; i < count; i++) {
+            qx[i] = (char) (int) (px[i] * scaleX); // positions are in [0, width), so this wraps at most once
+            qy[i] = (char) (int) (py[i] * scaleY);
+        }
+        System.arraycopy(particles.type, 0, slot.type, 0, count);
+        slot.tick = tick;
+        slot.count = count;
+        written.add(slot);
+        recorded++;
+        return true;
+    }
+
+    public long getRecorded() {
+        return recorded;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    // Waits for queued frames to be written, then appends the keyframe index
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        written.add(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try (channel) {
+            if (failure != null) {
+                throw failure;
+            }
+            ByteBuffer index = ByteBuffer.allocate(keyframes * 16 + 8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int k = 0; k < keyframes; k++) {
+                index.putLong(keyframeTicks[k]);
+                index.putLong(keyframeOffsets[k]);
+            }
+            index.putInt(keyframes);
+            index.putInt(INDEX_MAGIC);
+            index.flip();
+            writeFully(index);
+        }
+    }
+
+    private void runWriter() {
+        try {
+            Slot slot;
+            while ((slot = written.take()) != END) {
+                if (failure == null) {
+                    writeFrame(slot);
+                }
+                free.add(slot);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeFrame(Slot slot) throws IOException {
+        int count = slot.count;
+        boolean keyframe = count != previousCount || sinceKeyframe >= keyframeInterval
+                || !Arrays.equals(slot.type, 0, count, previousType, 0, count);
+        if (previousX.length < count) {
+            previousX = new char[slot.x.length];
+            previousY = new char[slot.x.length];
+            previousType = new int[slot.x.length];
+        }
+        if (keyframe) {
+            Arrays.fill(previousX, 0, count, (char) 0);
+            Arrays.fill(previousY, 0, count, (char) 0);
+            System.arraycopy(slot.type, 0, previousType, 0, count);
+            sinceKeyframe = 0;
+        }
+
+        // Worst case: 5 bytes per type and 3 bytes per 16-bit delta
+        int worst = FRAME_HEADER_BYTES + count * (keyframe ? 11 : 6);
+        if (out.capacity() < worst) {
+            out = ByteBuffer.allocateDirect(Math.max(worst, out.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        out.clear();
+        out.position(FRAME_HEADER_BYTES);
+        if (keyframe) {
+            for (int i = 0; i < count; i++) {
+                putVarint(out, slot.type[i]);
+            }
+        }
+        char[] qx = slot.x;
+        char[] qy = slot.y;
+        for (int i = 0; i < count; i++) {
+            // Deltas are taken modulo 2^16, so a particle wrapping around the world stays small
+            putVarint(out, zigzag((short) (qx[i] - previousX[i])));
+            putVarint(out, zigzag((short) (qy[i] - previousY[i])));
+        }
+        System.arraycopy(qx, 0, previousX, 0, count);
+        System.arraycopy(qy, 0, previousY, 0, count);
+        previousCount = count;
+        sinceKeyframe++;
+
+        out.putInt(0, out.position() - FRAME_HEADER_BYTES);
+        out.put(4, keyframe ? KEYFRAME : DELTA);
+        out.putLong(5, slot.tick);
+        out.putInt(13, count);
+        out.flip();
+        if (keyframe) {
+            addKeyframe(slot.tick, channel.position());
+        }
+        writeFully(out);
+    }
+
+    private void addKeyframe(long tick, long offset) {
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = tick;
+        keyframeOffsets[keyframes] = offset;
+        keyframes++;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,43 @@
+package com.physics.particlesimulator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Lock-free handoff of the latest value from one writer thread to one reader thread.
+// The writer fills back() and publishes it; the reader takes the most recently published
+// value with front(). Neither side ever waits for the other: three slots let the writer
+// keep writing while the reader holds on to the one it is using.
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // set while the middle slot holds an unread value
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // owned by the writer
+    private int front = 2; // owned by the reader
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    // The slot the writer may fill; it is not visible to the reader until publish()
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // The most recently published value. It stays valid and unchanged until the next call.
+    @SuppressWarnings("unchecked")
+    public T front() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) slots[front];
+    }
+}
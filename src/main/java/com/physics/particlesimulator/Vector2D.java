@@ -1,6 +1,11 @@
 package com.physics.particlesimulator;
 
+import java.util.SplittableRandom;
+
 public class Vector2D {
+    // Per-thread generator behind random(), seedable for reproducible runs
+    private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal.withInitial(SplittableRandom::new);
+
     public double x;
     public double y;
 
@@ -75,10 +80,19 @@ public class Vector2D {
     }
 
     public static double random(double min, double max) {
-        return min + Math.random() * (max - min);
+        return min + RANDOM.get().nextDouble() * (max - min);
     }
 
     public static double random(double max) {
-        return Math.random() * max;
+        return RANDOM.get().nextDouble() * max;
+    }
+
+    // Re-seeds the calling thread's generator; other threads are unaffected
+    public static void seedRandom(long seed) {
+        RANDOM.set(new SplittableRandom(seed));
+    }
+
+    public static SplittableRandom currentRandom() {
+        return RANDOM.get();
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.physics.particlesimulator;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// FloatKernel with the neighbor loop written against the Vector API: each iteration takes
+// one lane per neighbor, gathers the type-pair parameters from the flattened tables and
+// masks out the neighbors beyond the cutoff. The last vector of a range reads into the
+// next range or the padding and masks those lanes off too. Only created when
+// jdk.incubator.vector is present.
+final class VectorFloatKernel extends FloatKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    String name() {
+        return "vector " + SPECIES.length() + "x float";
+    }
+
+    @Override
+    long accumulate(int k, int start, int end, double[] forceX, double[] forceY) {
+        int lanes = SPECIES.length();
+        long pairs = 0;
+        if (end > start) {
+            float[] x = this.x;
+            float[] y = this.y;
+            int[] type = this.type;
+            int base = type[k] * numTypes;
+            FloatVector ax = FloatVector.broadcast(SPECIES, x[k]);
+            FloatVector ay = FloatVector.broadcast(SPECIES, y[k]);
+            float halfWidth = 0.5f * width;
+            float halfHeight = 0.5f * height;
+            FloatVector fx = FloatVector.zero(SPECIES);
+            FloatVector fy = FloatVector.zero(SPECIES);
+
+            for (int m = start; m < end; m += lanes) {
+                // The last iteration masks off the lanes past the end of the range
+                VectorMask<Float> inRange = SPECIES.indexInRange(m, end);
+                FloatVector dx = FloatVector.fromArray(SPECIES, x, m).sub(ax);
+                FloatVector dy = FloatVector.fromArray(SPECIES, y, m).sub(ay);
+                dx = dx.sub(width, dx.compare(VectorOperators.GT, halfWidth))
+                        .add(width, dx.compare(VectorOperators.LT, -halfWidth));
+                dy = dy.sub(height, dy.compare(VectorOperators.GT, halfHeight))
+                        .add(height, dy.compare(VectorOperators.LT, -halfHeight));
+
+                FloatVector distanceSquared = dx.mul(dx).add(dy.mul(dy));
+                FloatVector cutoff = FloatVector.fromArray(SPECIES, cutoffSquared, base, type, m);
+                VectorMask<Float> near = distanceSquared.compare(VectorOperators.LT, cutoff)
+                        .and(distanceSquared.compare(VectorOperators.NE, 0)).and(inRange);
+                if (!near.anyTrue()) continue;
+                pairs += near.trueCount();
+
+                FloatVector distance = distanceSquared.sqrt();
+                FloatVector repulsionRamp = FloatVector.fromArray(SPECIES, inverseMinDistance, base, type, m)
+                        .mul(distance).neg().add(1).max(0);
+                FloatVector attractionRamp = FloatVector.fromArray(SPECIES, inverseRadii, base, type, m)
+                        .mul(distance).neg().add(1).max(0);
+                FloatVector scale = FloatVector.fromArray(SPECIES, repulsion, base, type, m).mul(repulsionRamp)
+                        .add(FloatVector.fromArray(SPECIES, attraction, base, type, m).mul(attractionRamp))
+                        .div(distance);
+                fx = fx.add(dx.mul(scale), near);
+                fy = fy.add(dy.mul(scale), near);
+            }
+            forceX[k] += fx.reduceLanes(VectorOperators.ADD);
+            forceY[k] += fy.reduceLanes(VectorOperators.ADD);
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,185 @@
+package com.physics.particlesimulator;
+
+import java.util.SplittableRandom;
+
+// One independent simulation: its particles, interaction parameters (held by its engine),
+// spatial index and random generator. Worlds share nothing, so many can step at once in
+// one process, e.g. one per parameter set of a sweep, optionally on one shared pool through
+// getEngine().setPool(). A world is stepped by one thread at a time.
+public class World {
+    public final double width;
+    public final double height;
+
+    private final ParticleStore particles;
+    private final SpatialIndex index;
+    private final PhysicsEngine engine;
+    private final SplittableRandom random;
+    private long tick;
+
+    public World(double width, double height, InteractionTable table, ParticleStore particles,
+                 SplittableRandom random, long tick) {
+        this.width = width;
+        this.height = height;
+        this.particles = particles;
+        this.random = random;
+        this.tick = tick;
+        engine = new PhysicsEngine(table);
+        // Cell size follows the interaction cutoff and is re-tuned by the engine when it changes
+        index = new SpatialIndex(width, height, engine.bestCellSize(width, height, particles.size()));
+        index.build(particles);
+    }
+
+    // Random parameters and uniformly spread particles, all drawn from one seed
+    public static World random(double width, double height, int numTypes, int particleCount, long seed) {
+        return random(width, height, numTypes, particleCount, seed, InteractionTable.DEFAULT_MAX_RADIUS);
+    }
+
+    // Same, with interaction radii up to maxRadius
+    public static World random(double width, double height, int numTypes, int particleCount, long seed,
+                               double maxRadius) {
+        SplittableRandom random = new SplittableRandom(seed);
+        InteractionTable table = InteractionTable.random(numTypes, random, maxRadius);
+        ParticleStore particles = new ParticleStore(particleCount);
+        for (int i = 0; i < particleCount; i++) {
+            double x = random.nextDouble(0, width);
+            double y = random.nextDouble(0, height);
+
+            double vx = random.nextDouble(-1, 1); // slight initial motion
+            double vy = random.nextDouble(-1, 1);
+
+            int type = random.nextInt(numTypes);
+            particles.add(x, y, vx, vy, type);
+        }
+        return new World(width, height, table, particles, random, 0);
+    }
+
+    // World saved in a checkpoint; the random generator is not part of a checkpoint
+    public static World restore(Checkpoint checkpoint, long seed) {
+        return new World(checkpoint.width, checkpoint.height, checkpoint.table(), checkpoint.particles,
+                new SplittableRandom(seed), checkpoint.tick);
+    }
+
+    public void step() {
+        step(true);
+    }
+
+    // One step that may leave the index behind the particles when the engine does not need
+    // it (see PhysicsEngine.updateAll), for substeps whose index nobody reads
+    public void step(boolean updateIndex) {
+        StepEvent event = StepEvent.enabled() ? new StepEvent() : null;
+        if (event != null) event.begin();
+        engine.updateAll(particles, index, updateIndex);
+        tick++;
+        if (event != null && event.shouldCommit()) {
+            event.set(tick, particles.size(), engine.getMetrics());
+            event.commit();
+        }
+    }
+
+    // Several steps with the index brought up to date only after the last
+    public void step(int steps) {
+        for (int i = 0; i < steps; i++) {
+            step(i == steps - 1);
+        }
+    }
+
+    // Queues a particle to appear with the next step, wrapped into the world. Like every
+    // change to a world, call it on the thread that steps it, e.g. through
+    // SimulationLoop.submit(). Room in the store, index and engine is made here, so the
+    // step that adds the particle does not reallocate them.
+    public void spawn(double x, double y, double vx, double vy, int type) {
+        if (type < 0 || type >= getNumTypes()) {
+            throw new IllegalArgumentException("Type must be between 0 and " + (getNumTypes() - 1) + ": " + type);
+        }
+        particles.queueAdd(wrap(x, width), wrap(y, height), vx, vy, type);
+        index.reserve(particles.capacity());
+        engine.reserve(particles.capacity());
+    }
+
+    // Queues count particles of random types, spread evenly over the disc of the given
+    // radius around (x, y) with slight initial motion, drawn from this world's generator
+    public void spawnWithin(double x, double y, double radius, int count) {
+        int numTypes = getNumTypes();
+        for (int i = 0; i < count; i++) {
+            double distance = radius * Math.sqrt(random.nextDouble());
+            double angle = random.nextDouble(2 * Math.PI);
+            spawn(x + distance * Math.cos(angle), y + distance * Math.sin(angle),
+                    random.nextDouble(-1, 1), random.nextDouble(-1, 1), random.nextInt(numTypes));
+        }
+    }
+
+    // Queues particle i of the store for removal with the next step
+    public void despawn(int i) {
+        particles.queueRemove(i);
+    }
+
+    // Queues every particle within radius of (x, y), through the nearest periodic image,
+    // for removal with the next step and returns how many there were. Scans the store
+    // rather than the index, which substeps may have left behind.
+    public int despawnWithin(double x, double y, double radius) {
+        x = wrap(x, width);
+        y = wrap(y, height);
+        double halfWidth = 0.5 * width;
+        double halfHeight = 0.5 * height;
+        double radiusSquared = radius * radius;
+        int found = 0;
+        for (int i = 0; i < particles.size(); i++) {
+            double dx = particles.x[i] - x;
+            double dy = particles.y[i] - y;
+            if (dx > halfWidth) dx -= width;
+            else if (dx < -halfWidth) dx += width;
+            if (dy > halfHeight) dy -= height;
+            else if (dy < -halfHeight) dy += height;
+            if (dx * dx + dy * dy < radiusSquared) {
+                particles.queueRemove(i);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // Makes room for capacity particles ahead of time, so spawning up to that many never
+    // grows the store, the index or the engine's arrays
+    public void reserve(int capacity) {
+        particles.reserve(capacity);
+        index.reserve(particles.capacity());
+        engine.reserve(particles.capacity());
+    }
+
+    private static double wrap(double value, double size) {
+        value %= size;
+        if (value < 0) value += size;
+        return value < size ? value : 0; // a tiny negative value can round up to size
+    }
+
+    // New random parameters for the same number of types, drawn from this world's generator
+    public void regenerate() {
+        engine.setTable(InteractionTable.random(engine.getTable().numTypes, random));
+    }
+
+    public ParticleStore getParticles() {
+        return particles;
+    }
+
+    // Built from the current state of the particles after every step(), and after every
+    // step(n) as a whole
+    public SpatialIndex getIndex() {
+        return index;
+    }
+
+    public PhysicsEngine getEngine() {
+        return engine;
+    }
+
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    public int getNumTypes() {
+        return engine.getTable().numTypes;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+}
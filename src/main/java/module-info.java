@@ -3,6 +3,10 @@ module com.physics.particlesimulator.ParticleApplication {
     requires javafx.fxml;
     requires javafx.graphics;
     requires java.xml;
+    requires java.management; // SimulationMetrics MBean
+    requires jdk.management; // per-thread allocation counters, read by the tests
+    requires jdk.jfr; // StepEvent, FrameEvent
+    requires static jdk.incubator.vector; // float kernel; enable with --add-modules jdk.incubator.vector
 
 
     opens com.physics.particlesimulator to javafx.fxml;
@@ -0,0 +1,81 @@
+package com.physics.particlesimulator;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A warmed-up step allocates nothing, so a long run never pauses for garbage collection.
+// Measured on the stepping thread with the engine on one thread.
+class AllocationTest {
+    private static final int WARMUP_STEPS = 300;
+    private static final int STEPS = 200;
+    private static final double MAX_BYTES_PER_STEP = 16; // slack for the JIT, not for the engine
+
+    private static World world() {
+        return World.random(2000, 1500, 6, 2000, 42, 100);
+    }
+
+    @Test
+    void gatherStepAllocatesNothing() {
+        assertAllocationFree(world(), "gather");
+    }
+
+    @Test
+    void symmetricStepAllocatesNothing() {
+        World world = world();
+        world.getEngine().setSymmetric(true);
+        assertAllocationFree(world, "symmetric");
+    }
+
+    // With the kernel FloatKernel.create() picks on this JVM
+    @Test
+    void floatStepAllocatesNothing() {
+        World world = world();
+        world.getEngine().setFloatPrecision(true);
+        assertAllocationFree(world, "float (" + world.getEngine().getFloatKernelName() + ")");
+    }
+
+    @Test
+    void treeStepAllocatesNothing() {
+        World world = world();
+        world.getEngine().setOpeningAngle(0.5);
+        assertAllocationFree(world, "tree");
+    }
+
+    // Spawning past the store's capacity makes room in the engine too, so the steps that
+    // add the particles and build forces for them do not grow any arrays
+    @Test
+    void stepsAfterSpawnAllocateNothing() {
+        World lists = world();
+        lists.getEngine().setNeighborSkin(20);
+        assertSpawnAllocationFree(lists, "lists");
+        World floats = world();
+        floats.getEngine().setFloatPrecision(true);
+        assertSpawnAllocationFree(floats, "float");
+    }
+
+    private static void assertAllocationFree(World world, String mode) {
+        for (int i = 0; i < WARMUP_STEPS; i++) world.step();
+        double perStep = allocatedPerStep(world);
+        assertTrue(perStep <= MAX_BYTES_PER_STEP, mode + " step allocated " + perStep + " bytes");
+    }
+
+    private static void assertSpawnAllocationFree(World world, String mode) {
+        for (int i = 0; i < WARMUP_STEPS; i++) world.step();
+        ParticleStore particles = world.getParticles();
+        world.spawnWithin(1000, 750, 700, particles.capacity() - particles.size() + 500);
+        double perStep = allocatedPerStep(world);
+        assertTrue(perStep <= MAX_BYTES_PER_STEP, mode + " step after spawn allocated " + perStep + " bytes");
+    }
+
+    private static double allocatedPerStep(World world) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < STEPS; i++) world.step();
+        return (threads.getThreadAllocatedBytes(thread) - before) / (double) STEPS;
+    }
+}
@@ -0,0 +1,112 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CheckpointTest {
+    @TempDir
+    Path directory;
+
+    private static World world() {
+        World world = World.random(2000, 1500, 6, 2000, 42, 100);
+        world.step(25);
+        return world;
+    }
+
+    @Test
+    void savedWorldLoadsBackUnchanged() throws IOException {
+        World world = world();
+        Path path = directory.resolve("world.ckpt");
+        Checkpoint.capture(world).save(path);
+
+        Checkpoint checkpoint = Checkpoint.load(path);
+        assertEquals(world.width, checkpoint.width, 0);
+        assertEquals(world.height, checkpoint.height, 0);
+        assertEquals(world.getTick(), checkpoint.tick);
+        assertEquals(world.getParticles().stateHash(), checkpoint.particles.stateHash());
+        InteractionTable table = world.getEngine().getTable();
+        InteractionTable loaded = checkpoint.table();
+        for (int a = 0; a < table.numTypes; a++) {
+            assertArrayEquals(table.forces()[a], loaded.forces()[a], "forces of type " + a);
+            assertArrayEquals(table.minDistances()[a], loaded.minDistances()[a], "min distances of type " + a);
+            assertArrayEquals(table.radii()[a], loaded.radii()[a], "radii of type " + a);
+        }
+
+        // A restored world carries on exactly like the one that was saved
+        World restored = World.restore(checkpoint, 1);
+        world.step(25);
+        restored.step(25);
+        assertEquals(world.getParticles().stateHash(), restored.getParticles().stateHash());
+    }
+
+    @Test
+    void badMagicFails() throws IOException {
+        assertLoadFails(0, 0x12345678);
+    }
+
+    @Test
+    void unsupportedVersionFails() throws IOException {
+        assertLoadFails(4, Checkpoint.VERSION + 1);
+    }
+
+    @Test
+    void typeCountNotMatchingTheFileFails() throws IOException {
+        assertLoadFails(8, 0);
+        assertLoadFails(8, 7);
+    }
+
+    // A file that is consistent in itself, but has more types than the engine supports
+    @Test
+    void tooManyTypesFail() throws IOException {
+        int numTypes = InteractionTable.MAX_TYPES + 1;
+        double[][] forces = new double[numTypes][numTypes];
+        double[][] minDistance = new double[numTypes][numTypes];
+        double[][] radii = new double[numTypes][numTypes];
+        ParticleStore particles = new ParticleStore(1);
+        particles.add(1, 1, 0, 0, numTypes - 1);
+        Path path = directory.resolve("types.ckpt");
+        new Checkpoint(100, 100, 0, forces, minDistance, radii, particles).save(path);
+        assertThrows(IOException.class, () -> Checkpoint.load(path));
+    }
+
+    // The types are the last section, so the last int is the type of the last particle
+    @Test
+    void particleTypeOutOfRangeFails() throws IOException {
+        Path path = save("last.ckpt");
+        long lastType;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            lastType = channel.size() - Integer.BYTES;
+        }
+        assertLoadFails(path, lastType, 6);
+        assertLoadFails(path, lastType, -1);
+    }
+
+    private Path save(String name) throws IOException {
+        Path path = directory.resolve(name);
+        Checkpoint.capture(world()).save(path);
+        return path;
+    }
+
+    private void assertLoadFails(long offset, int value) throws IOException {
+        assertLoadFails(save("corrupt.ckpt"), offset, value);
+    }
+
+    private static void assertLoadFails(Path path, long offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value);
+            channel.write(bytes.flip(), offset);
+        }
+        assertThrows(IOException.class, () -> Checkpoint.load(path), value + " at offset " + offset);
+    }
+}
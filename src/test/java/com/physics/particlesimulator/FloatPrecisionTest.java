@@ -0,0 +1,60 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Float mode stays within a fixed tolerance of the double engine. Rounding differences
+// grow as the run goes on, so the bounds hold for STEPS steps; measured differences are
+// about a fifth of them for both kernels.
+class FloatPrecisionTest {
+    private static final int STEPS = 10;
+    private static final double MAX_VELOCITY_DIFFERENCE = 1e-4; // speeds here are up to ~1.5
+    private static final double MAX_POSITION_DIFFERENCE = 1e-3;
+
+    private static World world() {
+        return World.random(2000, 1500, 6, 2000, 11, 100);
+    }
+
+    @Test
+    void scalarKernelMatchesDouble() {
+        assertMatchesDouble(new FloatKernel());
+    }
+
+    @Test
+    void vectorKernelMatchesDouble() {
+        FloatKernel kernel = FloatKernel.vector();
+        assumeTrue(kernel != null, "jdk.incubator.vector is not in the boot layer");
+        assertMatchesDouble(kernel);
+    }
+
+    private static void assertMatchesDouble(FloatKernel kernel) {
+        World reference = world();
+        World world = world();
+        world.getEngine().setFloatKernel(kernel);
+        reference.step(STEPS);
+        world.step(STEPS);
+        assertEquals(reference.getEngine().getPairCount(), world.getEngine().getPairCount(), kernel.name() + " pairs");
+
+        ParticleStore expected = reference.getParticles();
+        ParticleStore actual = world.getParticles();
+        double velocity = 0;
+        double position = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            velocity = Math.max(velocity, Math.abs(actual.vx[i] - expected.vx[i]));
+            velocity = Math.max(velocity, Math.abs(actual.vy[i] - expected.vy[i]));
+            position = Math.max(position, wrappedDistance(actual.x[i], expected.x[i], world.width));
+            position = Math.max(position, wrappedDistance(actual.y[i], expected.y[i], world.height));
+        }
+        assertTrue(velocity <= MAX_VELOCITY_DIFFERENCE, kernel.name() + " velocity off by " + velocity);
+        assertTrue(position <= MAX_POSITION_DIFFERENCE, kernel.name() + " position off by " + position);
+    }
+
+    // Distance along one axis through the nearest periodic image
+    private static double wrappedDistance(double a, double b, double size) {
+        double d = Math.abs(a - b);
+        return Math.min(d, size - d);
+    }
+}
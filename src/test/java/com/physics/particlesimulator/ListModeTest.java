@@ -0,0 +1,44 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Neighbor lists against the cell stencil on the default world. Lists only add the pairs
+// within the skin, which the cutoff then rejects, so the forces match gather mode up to
+// summation order, whether a step rebuilt its lists or reused them; measured below 3e-13.
+class ListModeTest {
+    private static final int STEPS = 30;
+    private static final double TOLERANCE = 1e-10;
+
+    @Test
+    void listsMatchGatherOnBuiltAndReusedSteps() {
+        World gather = World.random(10000, 6000, 7, 18000, 1);
+        World lists = World.random(10000, 6000, 7, 18000, 1);
+        lists.getEngine().setNeighborSkin(20);
+        int rebuilt = 0;
+        for (int step = 0; step < STEPS; step++) {
+            gather.step();
+            lists.step();
+            rebuilt += lists.getEngine().getMetrics().listBuilds;
+            assertClose(gather, lists, step);
+        }
+        assertTrue(rebuilt > 1, "lists were never rebuilt after the first step");
+        assertTrue(rebuilt < STEPS / 2, "lists were rebuilt on " + rebuilt + " of " + STEPS + " steps");
+    }
+
+    private static void assertClose(World expectedWorld, World actualWorld, int step) {
+        ParticleStore expected = expectedWorld.getParticles();
+        ParticleStore actual = actualWorld.getParticles();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.vx[i], actual.vx[i], TOLERANCE, "vx of " + i + " after step " + step);
+            assertEquals(expected.vy[i], actual.vy[i], TOLERANCE, "vy of " + i + " after step " + step);
+            double dx = Math.abs(expected.x[i] - actual.x[i]);
+            double dy = Math.abs(expected.y[i] - actual.y[i]);
+            // Through the border, where rounding may wrap one of them and not the other
+            assertTrue(Math.min(dx, expectedWorld.width - dx) <= TOLERANCE, "x of " + i + " after step " + step);
+            assertTrue(Math.min(dy, expectedWorld.height - dy) <= TOLERANCE, "y of " + i + " after step " + step);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// A seed fixes a run: the same seed gives the same state, bit for bit, for any number of
+// threads, and on any JVM. GOLDEN_HASH pins the state of one run, so a change to the
+// engine's results shows up here; when a change is meant to alter them, update it with
+// the hash the test reports.
+class ReproducibilityTest {
+    private static final long SEED = 9;
+    private static final int STEPS = 100;
+    private static final long GOLDEN_HASH = 0x53f98e75978f1809L;
+
+    private static World world() {
+        return World.random(2000, 1500, 6, 1500, SEED, 100);
+    }
+
+    @Test
+    void sameSeedSameStateOnAnyThreadCount() {
+        for (boolean symmetric : new boolean[] {false, true}) {
+            long expected = run(symmetric, 1);
+            for (int threads : new int[] {2, 4, 7}) {
+                assertEquals(expected, run(symmetric, threads),
+                        (symmetric ? "symmetric, " : "gather, ") + threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    void goldenState() {
+        long hash = run(false, 1);
+        assertEquals(GOLDEN_HASH, hash, "state hash 0x" + Long.toHexString(hash));
+    }
+
+    private static long run(boolean symmetric, int threads) {
+        World world = world();
+        PhysicsEngine engine = world.getEngine();
+        engine.setSymmetric(symmetric);
+        engine.setThreads(threads);
+        try {
+            world.step(STEPS);
+        } finally {
+            engine.setThreads(1);
+        }
+        return world.getParticles().stateHash();
+    }
+}
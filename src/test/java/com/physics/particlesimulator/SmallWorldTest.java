@@ -0,0 +1,69 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Worlds only a few cutoffs across, where stencil offsets wrap around the grid onto the
+// same cells. Every neighbor cell must still be counted once, in the candidate pairs and
+// in the tile costs.
+class SmallWorldTest {
+    private static final int PARTICLES = 300;
+    private static final int STEPS = 20;
+    private static final InteractionTable TABLE = InteractionTable.random(4, new SplittableRandom(5));
+
+    // Square world of the given size in cutoffs, with uniformly spread particles
+    private static World world(double cutoffs) {
+        double size = cutoffs * TABLE.cutoff;
+        SplittableRandom random = new SplittableRandom(5);
+        ParticleStore particles = new ParticleStore(PARTICLES);
+        for (int i = 0; i < PARTICLES; i++) {
+            particles.add(random.nextDouble(size), random.nextDouble(size),
+                    random.nextDouble(-1, 1), random.nextDouble(-1, 1), random.nextInt(TABLE.numTypes));
+        }
+        return new World(size, size, TABLE, particles, random, 0);
+    }
+
+    // One cell, or two cells across whose stencil wraps onto the other one from both sides:
+    // either way every particle is a candidate of every other
+    @Test
+    void candidatesCountEveryPairOnce() {
+        for (double cutoffs : new double[] {0.8, 2.2}) {
+            World world = world(cutoffs);
+            world.step();
+            assertEquals((long) PARTICLES * (PARTICLES - 1), world.getEngine().getMetrics().candidatePairs,
+                    cutoffs + " cutoffs across");
+        }
+    }
+
+    // The stencil may wrap in every mode, and tiles are cut by the same costs
+    @Test
+    void everyModeStepsAlikeOnAnyThreadCount() {
+        for (double cutoffs : new double[] {0.8, 2.2}) {
+            for (String mode : new String[] {"gather", "symmetric", "float", "lists"}) {
+                assertEquals(run(world(cutoffs), mode, 1), run(world(cutoffs), mode, 4),
+                        mode + ", " + cutoffs + " cutoffs across");
+            }
+        }
+    }
+
+    private static long run(World world, String mode, int threads) {
+        PhysicsEngine engine = world.getEngine();
+        switch (mode) {
+            case "symmetric" -> engine.setSymmetric(true);
+            case "float" -> engine.setFloatPrecision(true);
+            case "lists" -> engine.setNeighborSkin(3 * TABLE.cutoff); // wider than the world
+            default -> {
+            }
+        }
+        engine.setThreads(threads);
+        try {
+            world.step(STEPS);
+        } finally {
+            engine.setThreads(1);
+        }
+        return world.getParticles().stateHash();
+    }
+}
@@ -0,0 +1,139 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Queued spawns and despawns: which slots they take, and that the engine notices them.
+// Store particles are told apart by their x, which is their original slot.
+class SpawnTest {
+    private static ParticleStore numbered(int count) {
+        ParticleStore particles = new ParticleStore(count);
+        for (int i = 0; i < count; i++) {
+            particles.add(i, 0, 0, 0, 0);
+        }
+        return particles;
+    }
+
+    private static double[] ids(ParticleStore particles) {
+        return Arrays.copyOf(particles.x, particles.size());
+    }
+
+    // New particles take the freed slots lowest first, in the order they were queued; the
+    // slot left over is filled from the end
+    @Test
+    void batchReusesLowestFreedSlots() {
+        ParticleStore particles = numbered(10);
+        particles.queueRemove(7);
+        particles.queueRemove(2);
+        particles.queueRemove(5);
+        particles.queueAdd(100, 0, 0, 0, 0);
+        particles.queueAdd(101, 0, 0, 0, 0);
+        assertTrue(particles.applyQueued());
+        assertArrayEquals(new double[] {0, 1, 100, 3, 4, 101, 6, 9, 8}, ids(particles));
+    }
+
+    @Test
+    void removingTwiceRemovesOnce() {
+        ParticleStore particles = numbered(10);
+        particles.queueRemove(3);
+        particles.queueRemove(3);
+        particles.queueRemove(9);
+        particles.queueRemove(3);
+        particles.applyQueued();
+        assertArrayEquals(new double[] {0, 1, 2, 8, 4, 5, 6, 7}, ids(particles));
+    }
+
+    // After any batch the store holds exactly the kept and the added particles, in its
+    // first size() slots
+    @Test
+    void storeStaysDense() {
+        SplittableRandom random = new SplittableRandom(4);
+        ParticleStore particles = numbered(200);
+        int next = 200;
+        for (int batch = 0; batch < 50; batch++) {
+            boolean[] present = new boolean[next + 20];
+            for (double id : ids(particles)) present[(int) id] = true;
+            for (int r = random.nextInt(15); r > 0; r--) {
+                int i = random.nextInt(particles.size());
+                particles.queueRemove(i);
+                present[(int) particles.x[i]] = false;
+            }
+            for (int a = random.nextInt(15); a > 0; a--) {
+                particles.queueAdd(next, 0, 0, 0, 0);
+                present[next++] = true;
+            }
+            particles.applyQueued();
+
+            double[] expected = new double[particles.size()];
+            int count = 0;
+            for (int id = 0; id < next; id++) {
+                if (present[id]) {
+                    assertTrue(count < expected.length, "batch " + batch + " lost slots");
+                    expected[count++] = id;
+                }
+            }
+            double[] actual = ids(particles);
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual, "batch " + batch);
+        }
+    }
+
+    @Test
+    void onlyEditsStartANewGeneration() {
+        ParticleStore particles = numbered(10);
+        long generation = particles.generation();
+        assertFalse(particles.applyQueued());
+        assertEquals(generation, particles.generation());
+        particles.queueRemove(4);
+        particles.applyQueued();
+        assertTrue(particles.generation() != generation);
+    }
+
+    // Edits are applied at the end of a step, so the step after them rebuilds the lists,
+    // even though no particle moved far enough to need it; forces then still match gather.
+    // The first edits only append or drop the last particle, so no slot changes hands and
+    // only the store's generation tells the lists apart.
+    @Test
+    void listModeRebuildsAfterEdits() {
+        World gather = World.random(2000, 1500, 6, 2000, 42, 100);
+        World lists = World.random(2000, 1500, 6, 2000, 42, 100);
+        lists.getEngine().setNeighborSkin(40);
+        gather.step(3);
+        lists.step(3);
+        for (int edit = 0; edit < 3; edit++) {
+            for (World world : new World[] {gather, lists}) {
+                switch (edit) {
+                    case 0 -> world.spawnWithin(1500, 400, 200, 60);
+                    case 1 -> world.despawn(world.getParticles().size() - 1);
+                    default -> {
+                        world.despawnWithin(800, 700, 150);
+                        world.despawn(0);
+                        world.despawn(0);
+                        world.spawnWithin(700, 400, 200, 60);
+                    }
+                }
+            }
+            gather.step();
+            lists.step();
+            assertEquals(0, lists.getEngine().getMetrics().listBuilds, "step " + lists.getTick() + " reused its lists");
+            gather.step();
+            lists.step();
+            assertEquals(1, lists.getEngine().getMetrics().listBuilds, "step " + lists.getTick() + " rebuilt its lists");
+            assertEquals(gather.getParticles().size(), lists.getParticles().size());
+            ParticleStore expected = gather.getParticles();
+            ParticleStore actual = lists.getParticles();
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.type[i], actual.type[i]);
+                assertEquals(expected.vx[i], actual.vx[i], 1e-9, "vx of " + i + " at tick " + lists.getTick());
+                assertEquals(expected.vy[i], actual.vy[i], 1e-9, "vy of " + i + " at tick " + lists.getTick());
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Round trips through TrajectoryRecorder and TrajectoryReader. Particles drift by their
+// velocities between frames, across the world border too, so every frame has deltas and
+// some of them wrap modulo 2^16.
+class TrajectoryTest {
+    private static final double WIDTH = 1000;
+    private static final double HEIGHT = 600;
+    private static final int TYPES = 5;
+
+    @TempDir
+    Path directory;
+
+    // What the store held when a frame was recorded
+    private static class Snapshot {
+        final long tick;
+        final double[] x;
+        final double[] y;
+        final int[] type;
+
+        Snapshot(ParticleStore particles, long tick) {
+            this.tick = tick;
+            x = Arrays.copyOf(particles.x, particles.size());
+            y = Arrays.copyOf(particles.y, particles.size());
+            type = Arrays.copyOf(particles.type, particles.size());
+        }
+    }
+
+    private static ParticleStore particles(int count) {
+        SplittableRandom random = new SplittableRandom(11);
+        ParticleStore particles = new ParticleStore(count);
+        for (int i = 0; i < count; i++) {
+            particles.add(random.nextDouble(WIDTH), random.nextDouble(HEIGHT),
+                    random.nextDouble(-8, 8), random.nextDouble(-8, 8), random.nextInt(TYPES));
+        }
+        return particles;
+    }
+
+    private static void drift(ParticleStore particles) {
+        for (int i = 0; i < particles.size(); i++) {
+            particles.x[i] = (particles.x[i] + particles.vx[i] + WIDTH) % WIDTH;
+            particles.y[i] = (particles.y[i] + particles.vy[i] + HEIGHT) % HEIGHT;
+        }
+    }
+
+    // Records frames at ticks 0 .. frames - 1, drifting in between; queueCapacity is
+    // large enough that nothing is dropped
+    private List<Snapshot> record(Path path, ParticleStore particles, int frames, int keyframeInterval)
+            throws IOException {
+        List<Snapshot> snapshots = new ArrayList<>();
+        try (TrajectoryRecorder recorder =
+                     new TrajectoryRecorder(path, WIDTH, HEIGHT, TYPES, keyframeInterval, frames)) {
+            for (int tick = 0; tick < frames; tick++) {
+                assertTrue(recorder.record(particles, tick));
+                snapshots.add(new Snapshot(particles, tick));
+                drift(particles);
+            }
+        }
+        return snapshots;
+    }
+
+    private static List<TrajectoryReader.Frame> readAll(TrajectoryReader reader) throws IOException {
+        List<TrajectoryReader.Frame> frames = new ArrayList<>();
+        TrajectoryReader.Frame frame = new TrajectoryReader.Frame();
+        while (reader.next(frame)) {
+            frames.add(copy(frame));
+            frame = new TrajectoryReader.Frame();
+        }
+        return frames;
+    }
+
+    private static TrajectoryReader.Frame copy(TrajectoryReader.Frame frame) {
+        TrajectoryReader.Frame copy = new TrajectoryReader.Frame();
+        copy.tick = frame.tick;
+        copy.count = frame.count;
+        copy.x = Arrays.copyOf(frame.x, frame.count);
+        copy.y = Arrays.copyOf(frame.y, frame.count);
+        copy.type = Arrays.copyOf(frame.type, frame.count);
+        return copy;
+    }
+
+    // Decoded positions are the centers of their quantization steps, so they lie within half
+    // a step of the recorded ones, measured through the border
+    private static void assertMatches(Snapshot expected, TrajectoryReader.Frame frame) {
+        assertEquals(expected.tick, frame.tick);
+        assertEquals(expected.x.length, frame.count, "count at tick " + frame.tick);
+        assertArrayEquals(expected.type, Arrays.copyOf(frame.type, frame.count), "types at tick " + frame.tick);
+        double maxX = 0.5 * WIDTH / 65536 + 1e-9;
+        double maxY = 0.5 * HEIGHT / 65536 + 1e-9;
+        for (int i = 0; i < frame.count; i++) {
+            double dx = Math.abs(frame.x[i] - expected.x[i]);
+            double dy = Math.abs(frame.y[i] - expected.y[i]);
+            assertTrue(Math.min(dx, WIDTH - dx) <= maxX, "x of " + i + " at tick " + frame.tick + " off by " + dx);
+            assertTrue(Math.min(dy, HEIGHT - dy) <= maxY, "y of " + i + " at tick " + frame.tick + " off by " + dy);
+        }
+    }
+
+    @Test
+    void positionsRoundTripWithinOneQuantum() throws IOException {
+        Path path = directory.resolve("drift.traj");
+        List<Snapshot> snapshots = record(path, particles(500), 40, 16);
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            assertEquals(WIDTH, reader.width, 0);
+            assertEquals(HEIGHT, reader.height, 0);
+            assertEquals(16, reader.keyframeInterval);
+            List<TrajectoryReader.Frame> frames = readAll(reader);
+            assertEquals(snapshots.size(), frames.size());
+            for (int f = 0; f < frames.size(); f++) {
+                assertMatches(snapshots.get(f), frames.get(f));
+            }
+        }
+    }
+
+    // Seeking through a keyframe and decoding forward gives exactly the sequential frame
+    @Test
+    void seekMatchesSequentialDecoding() throws IOException {
+        Path path = directory.resolve("seek.traj");
+        record(path, particles(300), 50, 8);
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            List<TrajectoryReader.Frame> frames = readAll(reader);
+            assertEquals(7, reader.keyframeCount()); // ticks 0, 8, .. 48
+            TrajectoryReader.Frame frame = new TrajectoryReader.Frame();
+            for (long tick : new long[] {49, 0, 7, 8, 9, 31, 17, 48}) {
+                assertTrue(reader.seek(tick, frame));
+                TrajectoryReader.Frame expected = frames.get((int) tick);
+                assertEquals(tick, frame.tick);
+                assertArrayEquals(expected.x, Arrays.copyOf(frame.x, frame.count), "x at tick " + tick);
+                assertArrayEquals(expected.y, Arrays.copyOf(frame.y, frame.count), "y at tick " + tick);
+                assertArrayEquals(expected.type, Arrays.copyOf(frame.type, frame.count), "types at tick " + tick);
+            }
+            // next() carries on after the frame seek() stopped at
+            reader.seek(20, frame);
+            assertTrue(reader.next(frame));
+            assertEquals(21, frame.tick);
+            assertArrayEquals(frames.get(21).x, Arrays.copyOf(frame.x, frame.count));
+            assertFalse(reader.seek(-1, frame));
+        }
+    }
+
+    // A delta frame only describes the same particles as the frame before it
+    @Test
+    void spawnAndDespawnForceKeyframes() throws IOException {
+        Path path = directory.resolve("edits.traj");
+        ParticleStore particles = particles(200);
+        List<Snapshot> snapshots = new ArrayList<>();
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(path, WIDTH, HEIGHT, TYPES, 1000, 16)) {
+            for (int tick = 0; tick < 12; tick++) {
+                if (tick == 4) {
+                    particles.queueAdd(10, 20, 1, 1, 3);
+                    particles.applyQueued();
+                } else if (tick == 8) {
+                    particles.queueRemove(5);
+                    particles.applyQueued();
+                }
+                assertTrue(recorder.record(particles, tick));
+                snapshots.add(new Snapshot(particles, tick));
+                drift(particles);
+            }
+        }
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            assertEquals(3, reader.keyframeCount());
+            assertEquals(0, reader.keyframeTick(0));
+            assertEquals(4, reader.keyframeTick(1));
+            assertEquals(8, reader.keyframeTick(2));
+            List<TrajectoryReader.Frame> frames = readAll(reader);
+            for (int f = 0; f < frames.size(); f++) {
+                assertMatches(snapshots.get(f), frames.get(f));
+            }
+        }
+    }
+
+    // The player sizes its colors from the header, not from the types it sees first
+    @Test
+    void typeCountComesFromTheHeader() throws IOException {
+        Path path = directory.resolve("types.traj");
+        ParticleStore particles = new ParticleStore(10);
+        for (int i = 0; i < 10; i++) particles.add(10 * i, 10, 0, 0, 0);
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(path, WIDTH, HEIGHT, TYPES, 100, 4)) {
+            recorder.record(particles, 0);
+            particles.queueAdd(500, 300, 0, 0, TYPES - 1);
+            particles.applyQueued();
+            recorder.record(particles, 1);
+        }
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            assertEquals(TYPES, reader.numTypes);
+        }
+        try (ReplayPlayer player = new ReplayPlayer(path, 60)) {
+            assertEquals(TYPES, player.numTypes);
+        }
+    }
+
+    // A recording cut off mid-frame, without its keyframe index, keeps every whole frame
+    @Test
+    void truncatedRecordingIsReadable() throws IOException {
+        Path path = directory.resolve("crash.traj");
+        List<Snapshot> snapshots = record(path, particles(300), 30, 8);
+        long[] keyframeTicks;
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            keyframeTicks = new long[reader.keyframeCount()];
+            for (int k = 0; k < keyframeTicks.length; k++) keyframeTicks[k] = reader.keyframeTick(k);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long trailer = 16L * keyframeTicks.length + 8;
+            channel.truncate(channel.size() - trailer - 10); // and the end of the last frame
+        }
+
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            assertEquals(keyframeTicks.length, reader.keyframeCount());
+            for (int k = 0; k < keyframeTicks.length; k++) {
+                assertEquals(keyframeTicks[k], reader.keyframeTick(k));
+            }
+            List<TrajectoryReader.Frame> frames = readAll(reader);
+            assertEquals(snapshots.size() - 1, frames.size());
+            for (int f = 0; f < frames.size(); f++) {
+                assertMatches(snapshots.get(f), frames.get(f));
+            }
+            TrajectoryReader.Frame frame = new TrajectoryReader.Frame();
+            assertTrue(reader.seek(Long.MAX_VALUE, frame));
+            assertMatches(snapshots.get(snapshots.size() - 2), frame);
+        }
+    }
+
+    // With one slot, a frame recorded right after another finds the writer busy and is
+    // dropped; the frames that were written still delta against each other correctly
+    @Test
+    void droppedFramesAreCountedAndSkipped() throws IOException {
+        Path path = directory.resolve("dropped.traj");
+        ParticleStore particles = particles(20000);
+        List<Snapshot> written = new ArrayList<>();
+        int attempts = 0;
+        int refused = 0;
+        long recorded;
+        long dropped;
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(path, WIDTH, HEIGHT, TYPES, 8, 1)) {
+            for (int tick = 0; tick < 60; tick++) {
+                attempts++;
+                if (recorder.record(particles, tick)) {
+                    written.add(new Snapshot(particles, tick));
+                } else {
+                    refused++;
+                }
+                drift(particles);
+            }
+            recorded = recorder.getRecorded();
+            dropped = recorder.getDropped();
+        }
+        assertTrue(refused > 0, "no frame was dropped");
+        assertEquals(refused, dropped);
+        assertEquals(attempts, recorded + dropped);
+
+        try (TrajectoryReader reader = new TrajectoryReader(path)) {
+            List<TrajectoryReader.Frame> frames = readAll(reader);
+            assertEquals(written.size(), frames.size());
+            for (int f = 0; f < frames.size(); f++) {
+                assertMatches(written.get(f), frames.get(f));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.physics.particlesimulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Tree forces against the exact cell kernel on a world whose radii reach across most of
+// it, so nodes on the periodic seam are in range of every particle. Particles start at
+// rest, so the velocity after one step is the force times the time step.
+class TreeAccuracyTest {
+    private static final int PARTICLES = 2000;
+
+    private static World world() {
+        SplittableRandom random = new SplittableRandom(3);
+        InteractionTable table = InteractionTable.random(6, random, 5000);
+        ParticleStore particles = new ParticleStore(PARTICLES);
+        for (int i = 0; i < PARTICLES; i++) {
+            particles.add(random.nextDouble(10000), random.nextDouble(6000), 0, 0, random.nextInt(6));
+        }
+        return new World(10000, 6000, table, particles, random, 0);
+    }
+
+    // RMS force error relative to the RMS force; measured 2.0% at theta 0.3 and 3.7% at 0.5
+    @Test
+    void forcesStayCloseToExactKernel() {
+        World exact = world();
+        exact.step();
+        double[][] bounds = {{0.3, 0.03}, {0.5, 0.06}};
+        for (double[] bound : bounds) {
+            World tree = world();
+            tree.getEngine().setOpeningAngle(bound[0]);
+            tree.step();
+            double error = relativeError(tree.getParticles(), exact.getParticles());
+            assertTrue(error <= bound[1], "theta " + bound[0] + ": RMS force error " + error);
+        }
+    }
+
+    private static double relativeError(ParticleStore actual, ParticleStore expected) {
+        double error = 0;
+        double total = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            double dx = actual.vx[i] - expected.vx[i];
+            double dy = actual.vy[i] - expected.vy[i];
+            error += dx * dx + dy * dy;
+            total += expected.vx[i] * expected.vx[i] + expected.vy[i] * expected.vy[i];
+        }
+        return Math.sqrt(error / total);
+    }
+}